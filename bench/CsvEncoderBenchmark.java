@@ -0,0 +1,107 @@
+import java.awt.event.KeyEvent;
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.*;
+
+// -----------------------------------------------------------------
+// CsvEncoderBenchmark - CsvEncoder vs. String-built output data
+// -----------------------------------------------------------------
+
+/**
+ * Checks that {@link CsvEncoder} produces exactly the bytes of the String-based encoding it
+ * replaced, then times both at increasing trial counts. The encoder's cost per trial should stay
+ * flat (linear scaling); the old <code>s += ...</code> encoding grows with the block size.
+ * <p>
+ * Run with <code>java -cp bin CsvEncoderBenchmark</code>.
+ */
+public class CsvEncoderBenchmark
+{
+	static final int[] SIZES = { 1000, 2000, 5000, 10000, 20000, 50000, 100000 };
+	static final int LEGACY_LIMIT = 10000; // the quadratic version takes minutes beyond this
+
+	public static void main(String[] args) throws IOException
+	{
+		checkIdentical(1000000);
+
+		System.out.println("trials   encoder (ns/trial)   String += (ns/trial)");
+		for (int n : SIZES)
+		{
+			double[] time = randomTimes(n, n);
+			double enc = time(n, time, true);
+			String old = n <= LEGACY_LIMIT ? String.format("%20.1f", time(n, time, false)) : "           (skipped)";
+			System.out.println(String.format("%6d   %18.1f   %s", n, enc, old));
+		}
+	}
+
+	// compare every value against the Formatter, including negatives, zeros and exact decimal ties,
+	// and key characters (some outside ASCII) against the platform encoding
+	static void checkIdentical(int samples) throws IOException
+	{
+		Random r = new Random(1);
+		double[] ms = new double[samples];
+		double[] v = new double[samples];
+		int[] k = new int[samples];
+		char[] keys = { 'a', 'Z', '7', ' ', '\u00e9', '\u20ac', KeyEvent.CHAR_UNDEFINED };
+		for (int i = 0; i < samples; ++i)
+		{
+			ms[i] = (r.nextInt(3) - 1) * (long)(r.nextDouble() * 1e10) / 1e6; // ns readings -> ms
+			v[i] = (r.nextBoolean() ? 1 : -1) * r.nextDouble() * Math.pow(10, r.nextInt(8));
+			if (i % 100 == 0)
+				v[i] = (r.nextInt(2000000) + 0.5) / 1e6;
+			k[i] = r.nextInt();
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		CsvEncoder out = new CsvEncoder(bytes, 4096);
+		StringBuilder want = new StringBuilder();
+		for (int i = 0; i < samples; ++i)
+		{
+			char key = keys[i % keys.length];
+			out.putMillis(ms[i]).next().putFloat(v[i]).next().put(k[i]).next().put(key).end();
+			want.append(ExperimentClock.formatMillis(ms[i])).append(',').append(String.format(Locale.US, "%f", v[i]))
+					.append(',').append(k[i]).append(',').append(key).append('\n');
+		}
+		out.flush();
+		if (!Arrays.equals(bytes.toByteArray(), want.toString().getBytes(Charset.defaultCharset())))
+			throw new IllegalStateException("CsvEncoder output differs from the String encoding");
+		System.out.println("byte-identical: " + samples + " rows checked");
+	}
+
+	private static double[] randomTimes(int n, long seed)
+	{
+		Random r = new Random(seed);
+		double[] t = new double[n];
+		for (int i = 0; i < n; ++i)
+			t[i] = (200000000L + (long)(r.nextDouble() * 400000000L)) / 1e6;
+		return t;
+	}
+
+	// ns per trial to encode an SR-style block (trial,time,dispatch,late,onset_error)
+	private static double time(int n, double[] time, boolean encoder) throws IOException
+	{
+		ByteArrayOutputStream sink = new ByteArrayOutputStream(n * 64);
+		CsvEncoder out = new CsvEncoder(sink, 64 * 1024);
+		long best = Long.MAX_VALUE;
+		for (int rep = 0; rep < 5; ++rep)
+		{
+			sink.reset();
+			long t0 = System.nanoTime();
+			if (encoder)
+			{
+				for (int i = 0; i < n; ++i)
+					out.put(i + 1).next().putMillis(time[i]).next().putMillis(0.25).next().put(0).next()
+							.putMillis(0.125).end();
+				out.flush();
+			} else
+			{
+				String s = "";
+				for (int i = 0; i < n; ++i)
+					s += (i + 1) + "," + ExperimentClock.formatMillis(time[i]) + "," + ExperimentClock.formatMillis(0.25)
+							+ "," + 0 + "," + ExperimentClock.formatMillis(0.125) + "\n";
+				sink.write(s.getBytes("US-ASCII"));
+			}
+			best = Math.min(best, System.nanoTime() - t0);
+		}
+		return best / (double)n;
+	}
+}
@@ -0,0 +1,419 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+// -----------------------------------------------------------------
+// HotPathBenchmark - time and garbage of the experiment's hot paths
+// -----------------------------------------------------------------
+
+/**
+ * Measures the code that runs per trial or per block: time per operation and bytes allocated per
+ * operation, so that a regression in per-trial latency or garbage shows up here before it reaches
+ * the lab.
+ * <p>
+ * Each case is warmed up until the JIT has settled, then run for {@link #ROUNDS} measured rounds;
+ * the median time and the mean allocation (from the thread's allocation counter) are reported.
+ * Every case returns a checksum that is printed, so the work can't be optimized away. Run with
+ *
+ * <pre>
+ *     java -cp bin HotPathBenchmark [name-filter]
+ * </pre>
+ *
+ * Allocation shows as "n/a" on JVMs without <code>com.sun.management.ThreadMXBean</code>.
+ */
+public class HotPathBenchmark
+{
+	static final int ROUNDS = 10;
+	static final long WARMUP_NANOS = 1000000000L; // per case
+
+	static final TrialEngine.Listener NO_LISTENER = new TrialEngine.Listener()
+	{
+		public void blockDone()
+		{
+		}
+	};
+
+	// one benchmark: setup() outside the measurement, run() measured, ops operations per run()
+	static abstract class Case
+	{
+		final String name;
+		final int ops;
+		String skip; // why the case can't be measured on this machine, or null
+
+		Case(String nameArg, int opsArg)
+		{
+			name = nameArg;
+			ops = opsArg;
+		}
+
+		void setup() throws IOException
+		{
+		}
+
+		abstract long run() throws IOException;
+	}
+
+	public static void main(String[] args) throws IOException
+	{
+		String filter = args.length > 0 ? args[0] : "";
+		List<Case> cases = cases();
+
+		System.out.println(String.format("%-34s %10s %14s %12s %s", "case", "ops", "ns/op", "B/op", "checksum"));
+		for (Case c : cases)
+			if (c.name.contains(filter))
+			{
+				if (c.skip != null)
+					System.out.println(String.format("%-34s skipped: %s", c.name, c.skip));
+				else
+					measure(c);
+			}
+	}
+
+	static List<Case> cases()
+	{
+		List<Case> cases = new ArrayList<Case>();
+
+		// response handling: one trial through the engine (stimulus due, key press, next trial); the
+		// auditory modes play their tones through a real AudioEngine, if there is an output line
+		final VirtualClock audioClock = new VirtualClock(0);
+		final AudioEngine audio = openAudio(audioClock);
+		for (final String mode : new String[] { "SR", "PM", "VS", "NM", "CM" })
+		{
+			final boolean auditory = mode.equals("NM") || mode.equals("CM");
+			Case keyPressed = new Case("keyPressed " + mode, 10000)
+			{
+				VirtualClock clock;
+				TrialEngine engine;
+				ExperimentBlock block;
+				int[] keys;
+
+				void setup()
+				{
+					ReactionTimeExperimentConfiguration c = config(mode, ops);
+					block = new ExperimentBlock(c, null, 1);
+					clock = auditory ? audioClock : new VirtualClock(0); // the audio engine's time base
+					StimulusPresenter presenter = auditory ? new AudioPresenter(audio, block.schedule) : new NullPresenter(
+							mode.equals("VS"));
+					engine = new TrialEngine(block, presenter, block.responseMapping(), clock, clock, NO_LISTENER);
+					keys = mode.equals("VS") ? SimulatedParticipant.SEARCH_KEYS : KeyTableMapping.parseKeys(
+							c.getResponseKeys(), block.choices);
+					engine.start();
+				}
+
+				long run()
+				{
+					int k = 0;
+					while (clock.runNext())
+						if (engine.state() == TrialEngine.STIMULUS)
+						{
+							clock.advance(300000000L);
+							long now = clock.now();
+							engine.keyPressed(keys[k++ & 1], 'f', now, now);
+							if (block.done())
+								break;
+						}
+					return block.numberOfErrors;
+				}
+			};
+			if (auditory && audio == null)
+				keyPressed.skip = "no audio output line";
+			cases.add(keyPressed);
+		}
+
+		// .sd1 rows and the .sd2 summary, at 10k and 100k trials
+		for (final int n : new int[] { 10000, 100000 })
+		{
+			cases.add(new Case("SD1 encode " + n, n)
+			{
+				ExperimentBlock block;
+				CountingStream sink = new CountingStream();
+				CsvEncoder out = new CsvEncoder(sink, 64 * 1024);
+
+				void setup()
+				{
+					block = filledBlock("SR", n);
+				}
+
+				long run() throws IOException
+				{
+					for (int i = 0; i < n; ++i)
+						block.SD1Row(i, out);
+					out.flush();
+					return sink.count;
+				}
+			});
+			cases.add(new Case("SD2 results " + n, 1)
+			{
+				ExperimentBlock block;
+				CountingStream sink = new CountingStream();
+				CsvEncoder out = new CsvEncoder(sink, 1024);
+
+				void setup()
+				{
+					block = filledBlock("SR", n);
+				}
+
+				long run() throws IOException
+				{
+					block.SD2Results(out);
+					out.end().flush();
+					return sink.count;
+				}
+			});
+			cases.add(new Case("RunningStats.add " + n, n)
+			{
+				double[] time;
+				RunningStats stats = new RunningStats();
+
+				void setup()
+				{
+					time = filledBlock("SR", n).time;
+				}
+
+				long run()
+				{
+					stats.clear();
+					for (int i = 0; i < n; ++i)
+						stats.add(time[i]);
+					return (long)(stats.mean() + stats.sd());
+				}
+			});
+		}
+
+		// balanced condition sequences: one factor with a run limit, and a 2 x 4 x 3 design
+		cases.add(new Case("ConditionShuffler 2, run 4, 100000", 100000)
+		{
+			ConditionShuffler design = new ConditionShuffler(2);
+			SplitMix r = new SplitMix(1);
+
+			long run()
+			{
+				return design.sequence(ops, 4, r)[ops - 1];
+			}
+		});
+		cases.add(new Case("ConditionShuffler 2x4x3 100001", 100001)
+		{
+			ConditionShuffler design = new ConditionShuffler(2, 4, 3);
+			SplitMix r = new SplitMix(1);
+
+			long run()
+			{
+				return design.sequence(ops, ConditionShuffler.NO_LIMIT, r)[ops - 1];
+			}
+		});
+
+		// the whole block's schedule, drawn up before the first trial
+		for (final String mode : new String[] { "SR", "VS" })
+			cases.add(new Case("TrialSchedule.generate " + mode + " 100000", 100000)
+			{
+				Randomizer random = new Randomizer(1);
+
+				long run()
+				{
+					TrialSchedule s = TrialSchedule.generate(mode, ops, 2, 16, ExperimentBlock.FOREPERIOD_MIN, 3000, random);
+					return s.stimulus[ops - 1] + s.foreperiod[ops - 1];
+				}
+			});
+
+		// one draw from a block's random stream (the stimulus side, say)
+		cases.add(new Case("Randomizer draw", 100000)
+		{
+			Randomizer random = new Randomizer(1);
+
+			long run()
+			{
+				long sum = 0;
+				for (int i = 0; i < ops; ++i)
+					sum += random.side.nextInt(2);
+				return sum;
+			}
+		});
+
+		// the word list: opening the compiled lexicon, and drawing word pairs from it
+		cases.add(new Case("Lexicon.load", 1)
+		{
+			long run() throws IOException
+			{
+				return Lexicon.load().size();
+			}
+		});
+		cases.add(new Case("Lexicon.pair 5 letters", 100000)
+		{
+			Lexicon lexicon;
+			SplitMix r = new SplitMix(1);
+			int[] pair = new int[2];
+
+			void setup() throws IOException
+			{
+				lexicon = Lexicon.load();
+			}
+
+			long run()
+			{
+				long sum = 0;
+				for (int i = 0; i < ops; ++i)
+				{
+					lexicon.pair(5, (i & 1) == 0, true, r, pair);
+					sum += pair[1] - pair[0];
+				}
+				return sum;
+			}
+		});
+
+		return cases;
+	}
+
+	static void measure(Case c) throws IOException
+	{
+		c.setup();
+		long checksum = 0;
+		long warm = System.nanoTime();
+		while (System.nanoTime() - warm < WARMUP_NANOS)
+		{
+			checksum += c.run();
+			c.setup(); // cases that consume their state (a block of trials) start again
+		}
+
+		long[] nanos = new long[ROUNDS];
+		long bytes = 0;
+		boolean alloc = allocatedBytes() >= 0;
+		long overhead = allocatedBytes(); // reading the counter allocates a little itself
+		overhead = allocatedBytes() - overhead;
+		for (int r = 0; r < ROUNDS; ++r)
+		{
+			c.setup();
+			long a0 = allocatedBytes();
+			long t0 = System.nanoTime();
+			checksum += c.run();
+			nanos[r] = System.nanoTime() - t0;
+			bytes += allocatedBytes() - a0 - overhead;
+		}
+		Arrays.sort(nanos);
+		double ns = nanos[ROUNDS / 2] / (double)c.ops;
+		String b = alloc ? String.format(Locale.US, "%12.1f", bytes / (double)ROUNDS / c.ops) : "         n/a";
+		System.out.println(String.format(Locale.US, "%-34s %10d %14.1f %s %d", c.name, c.ops, ns, b, checksum));
+	}
+
+	// bytes allocated by this thread so far, or -1 if the JVM can't tell
+	static long allocatedBytes()
+	{
+		try
+		{
+			java.lang.management.ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+			if (mx instanceof com.sun.management.ThreadMXBean)
+				return ((com.sun.management.ThreadMXBean)mx).getThreadAllocatedBytes(Thread.currentThread().getId());
+		} catch (UnsupportedOperationException e)
+		{
+		}
+		return -1;
+	}
+
+	// ------------------
+	// Fixtures
+	// ------------------
+
+	static ReactionTimeExperimentConfiguration config(String mode, int trials)
+	{
+		ReactionTimeExperimentConfiguration c = new ReactionTimeExperimentConfiguration();
+		c.setMode(mode);
+		c.setNumberOfTrials(trials);
+		c.setNumberOfItems(16);
+		return c;
+	}
+
+	// the experiment's audio output, timed by clock; null if this machine has none
+	static AudioEngine openAudio(Clock clock)
+	{
+		try
+		{
+			return new AudioEngine(clock, "Left.wav", "Right.wav");
+		} catch (Exception e)
+		{
+			return null;
+		}
+	}
+
+	// a block with n plausible trials already done
+	static ExperimentBlock filledBlock(String mode, int n)
+	{
+		ExperimentBlock block = new ExperimentBlock(config(mode, n), null, 1);
+		Random r = new Random(2);
+		for (int i = 0; i < n; ++i)
+		{
+			block.time[i] = 200.0 + r.nextDouble() * 400.0;
+			block.dispatch[i] = r.nextDouble();
+			block.onsetError[i] = r.nextDouble() * 0.2;
+			block.side[i] = r.nextInt(2);
+			block.error[i] = r.nextInt(20) == 0 ? 1 : 0;
+			block.addToStats(i);
+		}
+		block.count = n;
+		return block;
+	}
+
+	// counts the bytes written, keeps none
+	static class CountingStream extends OutputStream
+	{
+		long count;
+
+		public void write(int b)
+		{
+			++count;
+		}
+
+		public void write(byte[] b, int off, int len)
+		{
+			count += len;
+		}
+	}
+
+	static class NullPresenter implements StimulusPresenter
+	{
+		final boolean cue;
+
+		NullPresenter(boolean cueArg)
+		{
+			cue = cueArg;
+		}
+
+		public javax.swing.JComponent component()
+		{
+			return null;
+		}
+
+		public boolean hasCue()
+		{
+			return cue;
+		}
+
+		public StimulusCanvas canvas()
+		{
+			return null;
+		}
+
+		public void reset()
+		{
+		}
+
+		public void prepare(int trial)
+		{
+		}
+
+		public void cue(int trial)
+		{
+		}
+
+		public void present(int trial)
+		{
+		}
+
+		public long onsetTime(long presented)
+		{
+			return presented;
+		}
+
+		public void clear(int trial)
+		{
+		}
+	}
+}
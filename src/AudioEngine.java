@@ -0,0 +1,158 @@
+import java.io.*;
+
+import javax.sound.sampled.*;
+
+// -----------------------------------------------------------------
+// AudioEngine - preloaded, low-latency playback of the audio stimuli
+// -----------------------------------------------------------------
+
+/**
+ * Plays the auditory stimuli with a short, consistent onset latency.
+ * <p>
+ * All clips are loaded from the classpath once, at startup, and decoded to 16-bit PCM in memory.
+ * A single <code>SourceDataLine</code> is opened with a small buffer and kept running: a feeder
+ * thread writes silence to it continuously, and {@link #play(int)} merely tells the feeder which
+ * clip to write next. Starting a stimulus therefore involves no file I/O, no decoding, and no
+ * blocking of the caller, and the onset latency is bounded by the line's buffer.
+ * <p>
+ * The feeder notes the line's frame count at which each clip begins. {@link #onsetTime(long)}
+ * compares that with the line's current playback frame position to work out when the clip's
+ * first frame actually left the line, as a reading of the engine's {@link Clock}. That
+ * holds only if the line played without a break since the clip began: the feeder notes every
+ * underrun (the line found empty when the feeder came to write), and an onset with an underrun
+ * after it is not refined.
+ */
+class AudioEngine implements Runnable
+{
+	static final int LEFT = 0;
+	static final int RIGHT = 1;
+
+	// size of each write to the line, and the line's buffer, in milliseconds of audio
+	static final int CHUNK_MS = 5;
+	static final int BUFFER_MS = 20;
+
+	private final Clock clock; // the engine's time base
+	private final AudioFormat format;
+	private final SourceDataLine line;
+	private final byte[][] clips;
+	private final byte[] silence;
+	private final int chunk; // bytes per write
+	private volatile byte[] pending; // clip requested by play(), taken by the feeder
+	private volatile int requested; // sequence number of the last play() call
+	private volatile int started; // sequence number of the clip the feeder last began writing
+	private volatile long onsetFrame; // line frame at which that clip begins
+	private volatile long underrunFrame = -1; // line frame written after the last underrun
+	private long framesWritten; // feeder thread only
+
+	AudioEngine(Clock clockArg, String... names) throws IOException, UnsupportedAudioFileException,
+			LineUnavailableException
+	{
+		clock = clockArg;
+		clips = new byte[names.length][];
+		AudioFormat f = null;
+		for (int i = 0; i < names.length; ++i)
+		{
+			AudioInputStream in = load(names[i]);
+			if (f == null)
+				f = in.getFormat();
+			else if (!f.matches(in.getFormat()))
+				in = AudioSystem.getAudioInputStream(f, in);
+			clips[i] = readFully(in);
+		}
+		format = f;
+
+		int frameSize = format.getFrameSize();
+		int framesPerMs = Math.max(1, (int)(format.getFrameRate() / 1000));
+		chunk = CHUNK_MS * framesPerMs * frameSize;
+		silence = new byte[chunk];
+
+		line = AudioSystem.getSourceDataLine(format);
+		line.open(format, BUFFER_MS * framesPerMs * frameSize);
+		line.start();
+
+		Thread thread = new Thread(this, "AudioEngine");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MAX_PRIORITY);
+		thread.start();
+	}
+
+	// start playing a clip (LEFT, RIGHT, ...); returns immediately
+	void play(int clip)
+	{
+		++requested; // only ever called from the EDT; bumped first so the feeder sees it with the clip
+		pending = clips[clip];
+	}
+
+	// the time (clock reading) at which the clip last passed to play() reached the
+	// output, or fallback if the feeder hasn't begun writing it yet
+	long onsetTime(long fallback)
+	{
+		if (started != requested)
+			return fallback;
+		long now = clock.now();
+		long played = line.getLongFramePosition();
+		if (played < onsetFrame || underrunFrame > onsetFrame) // not out yet, or the line stalled since
+			return fallback;
+		double secondsSinceOnset = (played - onsetFrame) / format.getFrameRate();
+		return now - (long)(secondsSinceOnset * 1e9);
+	}
+
+	public void run()
+	{
+		while (true)
+		{
+			byte[] clip = pending;
+			int seq = requested;
+			if (clip == null)
+			{
+				write(silence, 0, silence.length); // blocks while the buffer is full
+				framesWritten += silence.length / format.getFrameSize();
+				continue;
+			}
+			pending = null;
+			onsetFrame = framesWritten;
+			started = seq;
+			for (int i = 0; i < clip.length; i += chunk)
+			{
+				write(clip, i, Math.min(chunk, clip.length - i));
+				framesWritten += Math.min(chunk, clip.length - i) / format.getFrameSize();
+			}
+		}
+	}
+
+	// write to the line, noting an underrun if it has run dry since the last write
+	private void write(byte[] b, int off, int len)
+	{
+		if (framesWritten > 0 && line.available() >= line.getBufferSize())
+			underrunFrame = framesWritten;
+		line.write(b, off, len);
+	}
+
+	// open a clip on the classpath as signed 16-bit PCM
+	private AudioInputStream load(String name) throws IOException, UnsupportedAudioFileException
+	{
+		InputStream is = getClass().getClassLoader().getResourceAsStream(name);
+		if (is == null)
+			throw new FileNotFoundException(name);
+		AudioInputStream in = AudioSystem.getAudioInputStream(new BufferedInputStream(is));
+		AudioFormat f = in.getFormat();
+		if (f.getEncoding() != AudioFormat.Encoding.PCM_SIGNED || f.getSampleSizeInBits() != 16)
+		{
+			AudioFormat pcm = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, f.getSampleRate(), 16,
+					f.getChannels(), f.getChannels() * 2, f.getSampleRate(), false);
+			in = AudioSystem.getAudioInputStream(pcm, in);
+		}
+		return in;
+	}
+
+	private static byte[] readFully(InputStream in) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buf = new byte[8192];
+		int n;
+		while ((n = in.read(buf)) != -1)
+			out.write(buf, 0, n);
+		in.close();
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,69 @@
+import java.awt.*;
+
+import javax.swing.*;
+
+// -----------------------------------------------------------------
+// AudioPresenter - a tone in the left or right ear (see AudioEngine)
+// -----------------------------------------------------------------
+
+class AudioPresenter implements StimulusPresenter
+{
+	final AudioEngine audio;
+	final TrialSchedule schedule;
+	JPanel experimentPanel;
+	int clip; // of the prepared trial
+
+	AudioPresenter(AudioEngine audioArg, TrialSchedule scheduleArg)
+	{
+		audio = audioArg;
+		schedule = scheduleArg;
+		experimentPanel = new JPanel();
+		experimentPanel.setPreferredSize(new Dimension(600, 600));
+		experimentPanel.setBorder(BorderFactory.createLineBorder(Color.gray));
+	}
+
+	public JComponent component()
+	{
+		return experimentPanel;
+	}
+
+	public boolean hasCue()
+	{
+		return false;
+	}
+
+	public StimulusCanvas canvas()
+	{
+		return null;
+	}
+
+	public void reset()
+	{
+	}
+
+	// the clips are decoded once, at startup (see AudioEngine); this only picks one
+	public void prepare(int trial)
+	{
+		clip = schedule.stimulus[trial] == 0 ? AudioEngine.LEFT : AudioEngine.RIGHT;
+	}
+
+	public void cue(int trial)
+	{
+	}
+
+	// the onset the engine takes now is provisional, see onsetTime
+	public void present(int trial)
+	{
+		audio.play(clip);
+	}
+
+	// when the clip's first frame actually left the output line
+	public long onsetTime(long presented)
+	{
+		return audio.onsetTime(presented);
+	}
+
+	public void clear(int trial)
+	{
+	}
+}
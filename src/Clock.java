@@ -0,0 +1,21 @@
+// -----------------------------------------------------------------
+// Clock - where the trial logic reads the time
+// -----------------------------------------------------------------
+
+/**
+ * A source of {@link ExperimentClock} readings (nanoseconds). A live session uses
+ * {@link #SYSTEM}; a simulation or a timing check uses a {@link VirtualClock}, which only moves
+ * when told to.
+ */
+interface Clock
+{
+	static final Clock SYSTEM = new Clock()
+	{
+		public long now()
+		{
+			return ExperimentClock.now();
+		}
+	};
+
+	long now();
+}
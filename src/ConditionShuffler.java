@@ -0,0 +1,175 @@
+// -----------------------------------------------------------------
+// ConditionShuffler - a balanced, shuffled sequence of conditions
+// -----------------------------------------------------------------
+
+/**
+ * A balanced design over any number of factors: each factor has a number of levels, and a
+ * condition (one level of every factor) is packed into a single int code, the first factor varying
+ * fastest. {@link #sequence} gives a block of trials in which every condition appears equally
+ * often, in random order (Fisher-Yates, so every ordering is equally likely). If the number of
+ * trials is not a multiple of the number of conditions, the extra trials go to conditions picked
+ * at random, each at most once.
+ * <p>
+ * A run limit keeps any condition from coming up more than that many times in a row; runs that
+ * are too long are broken up by swapping with a random later trial (or, at the very end, by moving
+ * the trial back to where it fits). Generating n trials takes O(n) time (expected) and one int
+ * array.
+ */
+class ConditionShuffler
+{
+	static final int NO_LIMIT = 0; // run limit: a condition may repeat any number of times
+
+	final int[] levels; // of each factor
+	final int[] stride; // code = sum of level[f] * stride[f]
+	final int conditions;
+
+	ConditionShuffler(int... levelsArg)
+	{
+		levels = levelsArg.clone();
+		stride = new int[levels.length];
+		long n = 1;
+		for (int f = 0; f < levels.length; ++f)
+		{
+			if (levels[f] < 1)
+				throw new IllegalArgumentException("A factor needs at least one level");
+			stride[f] = (int)n;
+			n *= levels[f];
+			if (n > Integer.MAX_VALUE)
+				throw new IllegalArgumentException("Too many conditions");
+		}
+		conditions = (int)n;
+	}
+
+	// the condition with the given level of each factor
+	int code(int... level)
+	{
+		int code = 0;
+		for (int f = 0; f < levels.length; ++f)
+			code += level[f] * stride[f];
+		return code;
+	}
+
+	// the level of factor f in a condition
+	int level(int code, int f)
+	{
+		return code / stride[f] % levels[f];
+	}
+
+	// a balanced sequence of condition codes, one per trial, with no condition more than maxRun
+	// times in a row (NO_LIMIT: any); IllegalArgumentException if the limit can't be met
+	int[] sequence(int trials, int maxRun, SplitMix r)
+	{
+		if (maxRun != NO_LIMIT && conditions == 1 && trials > maxRun)
+			throw new IllegalArgumentException("Can't limit runs with only one condition");
+
+		int[] a = new int[trials];
+		int whole = trials - trials % conditions;
+		for (int i = 0; i < whole; ++i)
+			a[i] = i % conditions;
+		if (whole < trials)
+		{
+			// the remainder: distinct conditions, chosen at random (a partial shuffle of all of them)
+			int[] pick = new int[conditions];
+			for (int k = 0; k < conditions; ++k)
+				pick[k] = k;
+			for (int i = whole, k = 0; i < trials; ++i, ++k)
+			{
+				int j = k + r.nextInt(conditions - k);
+				int t = pick[j];
+				pick[j] = pick[k];
+				pick[k] = t;
+				a[i] = t;
+			}
+		}
+
+		shuffle(a, r);
+		if (maxRun != NO_LIMIT)
+			limitRuns(a, maxRun, r);
+		return a;
+	}
+
+	// Fisher-Yates
+	static void shuffle(int[] a, SplitMix r)
+	{
+		for (int i = a.length - 1; i > 0; --i)
+		{
+			int j = r.nextInt(i + 1);
+			int t = a[i];
+			a[i] = a[j];
+			a[j] = t;
+		}
+	}
+
+	// break up runs longer than maxRun: the trial that makes a run too long trades places with a
+	// random later trial of another condition; if only that condition is left, it moves back to
+	// an earlier place where it fits
+	static void limitRuns(int[] a, int maxRun, SplitMix r)
+	{
+		int n = a.length;
+		int run = 1;
+		for (int i = 1; i < n; ++i)
+		{
+			if (a[i] != a[i - 1])
+			{
+				run = 1;
+				continue;
+			}
+			if (++run <= maxRun)
+				continue;
+
+			// a random later trial, then the first one after it (wrapping round) that differs
+			int j = -1;
+			if (i + 1 < n)
+			{
+				int start = i + 1 + r.nextInt(n - i - 1);
+				for (int k = start; j < 0 && k < n; ++k)
+					if (a[k] != a[i])
+						j = k;
+				for (int k = i + 1; j < 0 && k < start; ++k)
+					if (a[k] != a[i])
+						j = k;
+			}
+			if (j >= 0)
+			{
+				int t = a[i];
+				a[i] = a[j];
+				a[j] = t;
+				run = 1;
+				continue;
+			}
+
+			// the rest is all this condition: insert it earlier, shifting the trials in between
+			j = insertionPoint(a, i, maxRun, r);
+			if (j < 0)
+				throw new IllegalArgumentException("Can't keep runs of a condition to " + maxRun);
+			int v = a[i];
+			System.arraycopy(a, j, a, j + 1, i - j);
+			a[j] = v;
+			i = j; // rescan from there (everything before it is still fine)
+			run = 1;
+			for (int k = j - 1; k >= 0 && a[k] == v; --k)
+				++run;
+		}
+	}
+
+	// a place before trial i (from a random start) where a[i]'s condition can be inserted without
+	// making a run too long, or -1
+	private static int insertionPoint(int[] a, int i, int maxRun, SplitMix r)
+	{
+		int v = a[i];
+		int start = r.nextInt(i + 1);
+		for (int m = 0; m <= i; ++m)
+		{
+			int j = start + m <= i ? start + m : start + m - i - 1; // insert before a[j]
+			int left = 0;
+			for (int k = j - 1; k >= 0 && a[k] == v && left <= maxRun; --k)
+				++left;
+			int right = 0;
+			for (int k = j; k < i && a[k] == v && right <= maxRun; ++k)
+				++right;
+			if (left + right + 1 <= maxRun)
+				return j;
+		}
+		return -1;
+	}
+}
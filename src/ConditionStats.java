@@ -0,0 +1,47 @@
+// -----------------------------------------------------------------
+// ConditionStats - RunningStats for a block, broken down by condition
+// -----------------------------------------------------------------
+
+/**
+ * Running statistics for a block of trials: overall, by stimulus (left/right, or one of N
+ * panels), and by match/no-match, each with its own error count. The visual search set size is fixed for a
+ * block, so it is carried along as a label.
+ */
+class ConditionStats
+{
+	static final int NONE = -1; // condition doesn't apply to this mode
+
+	final int setSize;
+	final RunningStats all = new RunningStats();
+	final RunningStats[] side; // by stimulus: 0 = left, 1 = right (or left to right for N choices)
+	final RunningStats[] match = { new RunningStats(), new RunningStats() }; // 0 = no match, 1 = match
+	int errors;
+	final int[] sideErrors;
+	final int[] matchErrors = new int[2];
+
+	ConditionStats(int setSizeArg, int choices)
+	{
+		setSize = setSizeArg;
+		side = new RunningStats[choices];
+		for (int i = 0; i < choices; ++i)
+			side[i] = new RunningStats();
+		sideErrors = new int[choices];
+	}
+
+	// one trial; sideArg and matchArg are NONE where the mode has no such condition
+	void add(double time, int sideArg, int matchArg, int error)
+	{
+		all.add(time);
+		errors += error;
+		if (sideArg != NONE)
+		{
+			side[sideArg].add(time);
+			sideErrors[sideArg] += error;
+		}
+		if (matchArg != NONE)
+		{
+			match[matchArg].add(time);
+			matchErrors[matchArg] += error;
+		}
+	}
+}
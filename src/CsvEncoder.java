@@ -0,0 +1,159 @@
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.Locale;
+
+// -----------------------------------------------------------------
+// CsvEncoder - allocation-free encoding of the output data files
+// -----------------------------------------------------------------
+
+/**
+ * Buffered writer for the comma-separated .sd1/.sd2 files that encodes primitive values straight
+ * into a reusable byte buffer, with no intermediate Strings.
+ * <p>
+ * The output is byte-for-byte what the String-based code produced: integers as
+ * <code>String.valueOf</code>, times as {@link ExperimentClock#formatMillis(double)} (<code>%.3f</code>),
+ * and other doubles as <code>%f</code>. Fixed-point doubles are rounded from the scaled binary
+ * value; in the rare case where that value is too close to a rounding tie to be sure it rounds the
+ * same way as <code>java.util.Formatter</code>, the value is handed to the Formatter instead.
+ * Characters outside ASCII (a key that types none is recorded as <code>CHAR_UNDEFINED</code>) are
+ * encoded in the platform encoding, as the <code>FileWriter</code> did.
+ */
+class CsvEncoder
+{
+	private static final long[] POW10 = { 1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L };
+	private static final Charset CHARSET = Charset.defaultCharset(); // what FileWriter wrote
+
+	private final OutputStream out;
+	private final byte[] buf;
+	private int n; // bytes in buf
+
+	CsvEncoder(OutputStream outArg, int capacity)
+	{
+		out = outArg;
+		buf = new byte[Math.max(capacity, 64)];
+	}
+
+	CsvEncoder put(char c) throws IOException
+	{
+		if (c >= 0x80)
+			return put(String.valueOf(c).getBytes(CHARSET));
+		if (n == buf.length)
+			drain();
+		buf[n++] = (byte)c;
+		return this;
+	}
+
+	// text (header names, participant/block codes); allocates only if it isn't all ASCII
+	CsvEncoder put(String s) throws IOException
+	{
+		for (int i = 0; i < s.length(); ++i)
+			if (s.charAt(i) >= 0x80)
+				return put(s.getBytes(CHARSET)); // whole, so surrogate pairs stay together
+		for (int i = 0; i < s.length(); ++i)
+			put(s.charAt(i));
+		return this;
+	}
+
+	private CsvEncoder put(byte[] b) throws IOException
+	{
+		for (int i = 0; i < b.length; ++i)
+		{
+			if (n == buf.length)
+				drain();
+			buf[n++] = b[i];
+		}
+		return this;
+	}
+
+	CsvEncoder put(long v) throws IOException
+	{
+		if (n + 20 > buf.length)
+			drain();
+		if (v < 0)
+		{
+			if (v == Long.MIN_VALUE)
+				return put(Long.toString(v));
+			buf[n++] = '-';
+			v = -v;
+		}
+		int start = n;
+		do
+		{
+			buf[n++] = (byte)('0' + v % 10);
+			v /= 10;
+		} while (v != 0);
+		reverse(start, n - 1);
+		return this;
+	}
+
+	// a time in ms, as ExperimentClock.formatMillis()
+	CsvEncoder putMillis(double ms) throws IOException
+	{
+		return putFixed(ms, 3);
+	}
+
+	// a double as %f (six decimal places)
+	CsvEncoder putFloat(double v) throws IOException
+	{
+		return putFixed(v, 6);
+	}
+
+	CsvEncoder next() throws IOException
+	{
+		return put(',');
+	}
+
+	CsvEncoder end() throws IOException
+	{
+		return put('\n');
+	}
+
+	// write everything encoded so far to the stream
+	void flush() throws IOException
+	{
+		drain();
+		out.flush();
+	}
+
+	void close() throws IOException
+	{
+		flush();
+		out.close();
+	}
+
+	private CsvEncoder putFixed(double v, int places) throws IOException
+	{
+		double scaled = Math.abs(v) * POW10[places];
+		double floor = Math.floor(scaled);
+		double frac = scaled - floor;
+		// NaN, infinite, too large for a long, or too close to a tie: let the Formatter decide
+		if (!(scaled < 1e15) || Math.abs(frac - 0.5) <= 4 * Math.ulp(scaled))
+			return put(String.format(Locale.US, "%." + places + "f", v));
+
+		long units = (long)floor + (frac > 0.5 ? 1 : 0);
+		if (v < 0 || (v == 0 && 1 / v < 0)) // Formatter keeps the sign of -0.0 and of values that round to 0
+			put('-');
+		put(units / POW10[places]);
+		put('.');
+		long f = units % POW10[places];
+		for (int p = places - 1; p >= 0; --p)
+			put((char)('0' + (f / POW10[p]) % 10));
+		return this;
+	}
+
+	private void reverse(int i, int j)
+	{
+		for (; i < j; ++i, --j)
+		{
+			byte t = buf[i];
+			buf[i] = buf[j];
+			buf[j] = t;
+		}
+	}
+
+	private void drain() throws IOException
+	{
+		out.write(buf, 0, n);
+		n = 0;
+	}
+}
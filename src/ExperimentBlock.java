@@ -0,0 +1,352 @@
+import java.io.*;
+
+// -----------------------------------------------------------------
+// ExperimentBlock - the data of one block of trials and its output
+// -----------------------------------------------------------------
+
+/**
+ * Everything recorded about a block of trials, independent of how the trials are presented:
+ * the per-trial arrays, running statistics and histogram, the block's random sequence and
+ * {@link TrialSchedule}, and the output files (.sd1 via {@link TrialWriter}, .sd2, .hist, .sched,
+ * and the {@link SessionJournal}).
+ * <p>
+ * The {@link TrialEngine} fills in one trial at a time through {@link #onset}, {@link #response}
+ * and {@link #trialDone()}; none of these allocate or touch the filesystem.
+ */
+class ExperimentBlock implements TrialWriter.Format
+{
+	static final String SD2_SIDES_HEADER = "left_n,left_mean,left_sd,right_n,right_mean,right_sd";
+	static final String SD2_PERCENTILES_HEADER = "p50,p90,p99";
+	static final String SD2_RUN_HEADER = "seed,refresh_hz,key_events,dropped_events,late_events";
+	static final int FOREPERIOD_MIN = 2000; // ms
+
+	final ReactionTimeExperimentConfiguration c;
+	final String participantCode;
+	final String blockCode;
+	final String mode;
+	final int numberOfItems;
+	final int choices; // number of stimuli (and response keys) outside visual search
+	final int maxTrials;
+	final int dispatchBudget; // ms
+	final boolean visualSearch;
+	final boolean audio;
+	final boolean frameTimed; // onsets aligned to display frames (see StimulusCanvas)
+
+	double[] time; // reaction times in ms (sub-ms resolution, see ExperimentClock)
+	double[] dispatch; // delay (ms) between each key event and its handler
+	int[] late; // 1 = dispatch delay over budget, RT may be contaminated
+	double[] onsetError; // actual minus scheduled stimulus onset (ms)
+	double[] outputLatency; // play() request to audible onset (ms), audio modes only
+	int[] droppedFrames; // display frames the onset flip missed (visual modes on the canvas)
+	double[] prepareTime; // getting the stimulus ready, before the trial (ms)
+	double[] onsetPath; // from the onset coming due to the stimulus being presented (ms)
+	int[] side; // stimulus (0 = leftmost panel, or left ear) presented on each trial
+	char[] key;
+	int[] match;
+	int[] error;
+	int[] errorCount; // numberOfErrors once each trial was done (for resuming)
+	int numberOfErrors;
+	int count = 0;
+	int refreshRate; // Hz of the display the visual stimuli went to (0: unknown, or not visual)
+	int keyEvents; // key presses and releases captured during the block (see InputCapture)
+	int droppedEvents; // ... presses that never arrived
+	int lateEvents; // ... events handled over the dispatch budget after being generated
+
+	ConditionStats stats; // updated as each trial completes
+	RTHistogram histogram; // ditto, for percentiles; saved next to the .sd2 file
+
+	long seed; // randomization for the block (see Randomizer)
+	Randomizer random;
+	TrialSchedule schedule; // what every trial presents, decided before the first
+
+	TrialWriter sd1; // streams each trial to the .sd1 file
+	SessionJournal journal; // lets an interrupted block be resumed
+	CsvEncoder sd2;
+	String base; // output file name, without extension
+
+	ExperimentBlock(ReactionTimeExperimentConfiguration cArg, SessionJournal.Recovered rec)
+	{
+		this(cArg, rec, rec != null ? rec.seed : Randomizer.seedFor(cArg));
+	}
+
+	// a block with a given seed (a resumed block must use the recovered one)
+	ExperimentBlock(ReactionTimeExperimentConfiguration cArg, SessionJournal.Recovered rec, long seedArg)
+	{
+		c = cArg;
+		participantCode = c.getParticipantCode() < 10 ? "P0" + c.getParticipantCode() : "P" + c.getParticipantCode();
+		blockCode = c.getBlockCode() < 10 ? "B0" + c.getBlockCode() : "B" + c.getBlockCode();
+		mode = c.getMode();
+		numberOfItems = c.getNumberOfItems();
+		maxTrials = c.getNumberOfTrials();
+		dispatchBudget = c.getDispatchBudget();
+		visualSearch = mode.equals("VS");
+		audio = mode.equals("NM") || mode.equals("CM");
+		choices = visualSearch ? 2 : c.getNumberOfChoices();
+		frameTimed = !audio;
+
+		time = new double[maxTrials];
+		dispatch = new double[maxTrials];
+		late = new int[maxTrials];
+		onsetError = new double[maxTrials];
+		outputLatency = new double[maxTrials];
+		droppedFrames = new int[maxTrials];
+		prepareTime = new double[maxTrials];
+		onsetPath = new double[maxTrials];
+		side = new int[maxTrials];
+		key = new char[maxTrials];
+		match = new int[maxTrials];
+		error = new int[maxTrials];
+		errorCount = new int[maxTrials];
+		numberOfErrors = 0;
+		stats = new ConditionStats(numberOfItems, choices);
+		histogram = new RTHistogram();
+
+		// a resumed block continues with the same random sequence, and so the same schedule
+		seed = seedArg;
+		random = new Randomizer(seed);
+		schedule = makeSchedule();
+
+		if (rec != null)
+		{
+			rec.restore(this);
+			for (int i = 0; i < count; ++i)
+				addToStats(i);
+		}
+		random.trial(count);
+
+		base = "ReactionTimeExperiment-" + participantCode + "-" + blockCode + "-" + mode;
+		if (visualSearch)
+			base += "-" + numberOfItems;
+	}
+
+	// the trials of the block: replayed from the configured schedule file (whose seed the block then
+	// takes over), or generated from the seed; IllegalArgumentException if the file can't be used
+	private TrialSchedule makeSchedule()
+	{
+		String file = c.getScheduleFile();
+		if (file.length() == 0)
+			return TrialSchedule.generate(mode, maxTrials, choices, numberOfItems, FOREPERIOD_MIN, foreperiodRange(),
+					random);
+		TrialSchedule s;
+		try
+		{
+			s = TrialSchedule.read(new File(file));
+			s.check(mode, maxTrials, choices, numberOfItems);
+		} catch (IOException e)
+		{
+			throw new IllegalArgumentException("Can't use trial schedule " + file + ": " + e.getMessage());
+		}
+		if (s.seed != seed)
+		{
+			seed = s.seed;
+			random = new Randomizer(seed);
+		}
+		return s;
+	}
+
+	// open the output data files (rewriting any recovered trials)
+	void open(SessionJournal.Recovered rec) throws IOException
+	{
+		schedule.write(base + TrialSchedule.SUFFIX);
+		journal = new SessionJournal(base + SessionJournal.SUFFIX, this, c, rec);
+		sd1 = new TrialWriter(base + ".sd1", this, journal);
+		sd1.publish(count);
+		sd2 = new CsvEncoder(new FileOutputStream(base + ".sd2"), 1024);
+		sd2.put(SD2Header());
+		sd2.flush();
+	}
+
+	// all trials are done: complete the output files
+	void finish() throws IOException
+	{
+		sd1.finish();
+		SD2Results(sd2);
+		sd2.close();
+		histogram.write(base + RTHistogram.SUFFIX);
+		journal.finish();
+	}
+
+	boolean done()
+	{
+		return count == maxTrials;
+	}
+
+	// which key is correct for each stimulus in this block's mode; IllegalArgumentException if the
+	// configured response keys don't fit
+	ResponseMapping responseMapping()
+	{
+		if (visualSearch)
+			return new MatchMapping();
+		if (audio && choices != 2)
+			throw new IllegalArgumentException("The audio modes have two choices (left and right)");
+		boolean reversed = mode.equals("PM") || mode.equals("CM");
+		return new KeyTableMapping(KeyTableMapping.parseKeys(c.getResponseKeys(), choices), reversed);
+	}
+
+	// the random part of the foreperiod (ms), on top of FOREPERIOD_MIN
+	int foreperiodRange()
+	{
+		return mode.equals("NM") ? 5000 : 3000;
+	}
+
+	// -------------------------------------------
+	// Trial events (called by the TrialEngine)
+	// -------------------------------------------
+
+	// the current trial's stimulus was prepared between start and end
+	void prepared(long start, long end)
+	{
+		prepareTime[count] = ExperimentClock.elapsedMillis(start, end);
+	}
+
+	// the stimulus of the current trial was presented at onset (scheduled for deadline, started when
+	// the scheduler fired)
+	void onset(int stimulus, long deadline, long fired, long onset)
+	{
+		onsetError[count] = ExperimentClock.elapsedMillis(deadline, onset);
+		onsetPath[count] = ExperimentClock.elapsedMillis(fired, onset);
+		if (visualSearch)
+			match[count] = stimulus;
+		else
+			side[count] = stimulus;
+	}
+
+	// the onset of the current trial missed its display frame by this many frames
+	void droppedFrames(int frames)
+	{
+		droppedFrames[count] = frames;
+	}
+
+	// the presenter refined the onset (e.g., audio reaching the output) after the fact
+	void onsetRefined(long provisional, long onset)
+	{
+		outputLatency[count] = ExperimentClock.elapsedMillis(provisional, onset);
+		onsetError[count] += outputLatency[count];
+	}
+
+	// store the response for the current trial; the RT runs from stimulus onset to the moment the
+	// key event was generated (when), so time the event spent queued behind other work on the EDT
+	// is not charged to the participant (the queueing delay is kept separately and flagged if over
+	// budget)
+	void response(long onset, long when, long handled, char keyChar, boolean wrong)
+	{
+		time[count] = ExperimentClock.elapsedMillis(onset, when);
+		dispatch[count] = ExperimentClock.elapsedMillis(when, handled);
+		late[count] = dispatch[count] > dispatchBudget ? 1 : 0;
+		key[count] = keyChar;
+		error[count] = wrong ? 1 : 0;
+		if (wrong)
+			++numberOfErrors;
+	}
+
+	// a response key was pressed before the stimulus
+	void anticipation()
+	{
+		++numberOfErrors;
+	}
+
+	// the current trial is complete: hand it to the .sd1 writer and move on to the next
+	void trialDone()
+	{
+		errorCount[count] = numberOfErrors;
+		addToStats(count);
+		++count;
+		random.trial(count);
+		if (sd1 != null) // not opened: the trials are only kept in memory
+			sd1.publish(count);
+	}
+
+	void addToStats(int i)
+	{
+		histogram.add(time[i]);
+		if (visualSearch)
+			stats.add(time[i], ConditionStats.NONE, match[i], error[i]);
+		else
+			stats.add(time[i], side[i], ConditionStats.NONE, error[i]);
+	}
+
+	// -------------
+	// Output format
+	// -------------
+
+	public String SD1Header()
+	{
+		if (visualSearch)
+			return "trial,time,key,match,error,dispatch,late,onset_error,dropped_frames,prepare_time,onset_path\n";
+		return "trial,time,dispatch,late,onset_error" + (audio ? ",output_latency" : "")
+				+ (frameTimed ? ",dropped_frames" : "") + ",prepare_time,onset_path\n";
+	}
+
+	public void SD1Row(int i, CsvEncoder out) throws IOException
+	{
+		if (visualSearch)
+		{
+			out.put(i + 1).next().putMillis(time[i]).next().put(key[i]).next().put(match[i]).next().put(error[i])
+					.next().putMillis(dispatch[i]).next().put(late[i]).next().putMillis(onsetError[i]).next()
+					.put(droppedFrames[i]).next().putMillis(prepareTime[i]).next().putMillis(onsetPath[i]).end();
+			return;
+		}
+		out.put(i + 1).next().putMillis(time[i]).next().putMillis(dispatch[i]).next().put(late[i]).next()
+				.putMillis(onsetError[i]);
+		if (audio)
+			out.next().putMillis(outputLatency[i]);
+		if (frameTimed)
+			out.next().put(droppedFrames[i]);
+		out.next().putMillis(prepareTime[i]).next().putMillis(onsetPath[i]).end();
+	}
+
+	// the normal-mapping modes (SR, NM) also report the error count
+	private boolean errorColumn()
+	{
+		return mode.equals("SR") || mode.equals("NM");
+	}
+
+	String SD2Header()
+	{
+		if (visualSearch)
+			return "Participant,Block,Mode,Number_of_Items," + "total_time,total_errors,"
+					+ "total_match_time,n_match,n_match_errors," + "total_no-match_time,n_no-match,n_no-match_errors,"
+					+ SD2_PERCENTILES_HEADER + "," + SD2_RUN_HEADER + "\n";
+		return "Participant,Block,Mode,mean,min,max,sd," + (errorColumn() ? "numberOfErrors," : "")
+				+ sidesHeader() + "," + SD2_PERCENTILES_HEADER + "," + SD2_RUN_HEADER + "\n";
+	}
+
+	// per-stimulus columns: left/right for two choices, stimulus1..N (left to right) for more
+	private String sidesHeader()
+	{
+		if (choices == 2)
+			return SD2_SIDES_HEADER;
+		StringBuilder sb = new StringBuilder();
+		for (int i = 1; i <= choices; ++i)
+			sb.append(i == 1 ? "" : ",").append("stimulus").append(i).append("_n,stimulus").append(i)
+					.append("_mean,stimulus").append(i).append("_sd");
+		return sb.toString();
+	}
+
+	void SD2Results(CsvEncoder out) throws IOException
+	{
+		out.put(participantCode).next().put(blockCode).next().put(mode).next();
+		if (visualSearch)
+		{
+			RunningStats noMatch = stats.match[0];
+			RunningStats match = stats.match[1];
+			out.put(numberOfItems).next().putMillis(stats.all.sum()).next().put(stats.errors).next()
+					.putMillis(match.sum()).next().put(match.count()).next().put(stats.matchErrors[1]).next()
+					.putMillis(noMatch.sum()).next().put(noMatch.count()).next().put(stats.matchErrors[0]);
+		} else
+		{
+			out.putFloat(stats.all.mean()).next().putFloat(stats.all.min()).next().putFloat(stats.all.max()).next()
+					.putFloat(stats.all.sd());
+			if (errorColumn())
+				out.next().put(numberOfErrors);
+			for (int i = 0; i < choices; ++i)
+			{
+				RunningStats r = stats.side[i];
+				out.next().put(r.count()).next().putFloat(r.mean()).next().putFloat(r.sd());
+			}
+		}
+		out.next().putFloat(histogram.percentile(0.5)).next().putFloat(histogram.percentile(0.9)).next()
+				.putFloat(histogram.percentile(0.99)).next().put(seed).next().put(refreshRate).next().put(keyEvents).next()
+				.put(droppedEvents).next().put(lateEvents);
+	}
+}
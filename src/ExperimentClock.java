@@ -0,0 +1,60 @@
+import java.awt.event.InputEvent;
+import java.util.Locale;
+
+// -----------------------------------------------------------------
+// ExperimentClock - the one time base used for every trial
+// -----------------------------------------------------------------
+
+/**
+ * Monotonic, nanosecond-resolution clock shared by all experiment dialogs.
+ * <p>
+ * Readings come from <code>System.nanoTime()</code>, so they never step when the wall clock is
+ * adjusted (e.g., by NTP) and are not quantized to whole milliseconds. Readings are only
+ * meaningful relative to each other; use {@link #elapsedMillis(long, long)} to turn a pair of
+ * readings (stimulus onset, response) into a reaction time.
+ */
+class ExperimentClock
+{
+	static final long NANOS_PER_MILLI = 1000000L;
+
+	// all readings are relative to this origin (keeps the numbers small and positive)
+	private static final long ORIGIN = System.nanoTime();
+
+	private ExperimentClock()
+	{
+	}
+
+	// current time in nanoseconds since the clock was loaded
+	static long now()
+	{
+		return System.nanoTime() - ORIGIN;
+	}
+
+	// convert a delay in milliseconds to clock units
+	static long fromMillis(long ms)
+	{
+		return ms * NANOS_PER_MILLI;
+	}
+
+	// elapsed time in milliseconds (sub-ms resolution) between two readings
+	static double elapsedMillis(long from, long to)
+	{
+		return (to - from) / (double)NANOS_PER_MILLI;
+	}
+
+	// clock reading at which an input event was generated; getWhen() is a wall-clock time in ms,
+	// so take its age against the wall clock and step back from the handler's own reading
+	static long eventTime(InputEvent e, long handled)
+	{
+		long age = System.currentTimeMillis() - e.getWhen();
+		if (age < 0) // wall clock stepped backwards since the event
+			age = 0;
+		return handled - age * NANOS_PER_MILLI;
+	}
+
+	// format a time in milliseconds for the output data files (microsecond resolution)
+	static String formatMillis(double ms)
+	{
+		return String.format(Locale.US, "%.3f", ms);
+	}
+}
@@ -0,0 +1,192 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+import javax.swing.*;
+
+// -----------------------------------------------------------------
+// GridPresenter - visual search: a target letter, then a grid of letters
+// -----------------------------------------------------------------
+
+class GridPresenter implements StimulusPresenter, StimulusCanvas.Scene
+{
+	static final int CELL = 30; // px, at full size
+	static final int FONT_SIZE = 18; // at full size
+	static final int GAP = 10; // px between the target and the grid
+	static final int MARGIN = 20; // px around the whole display
+	static final Color BACKGROUND = new Color(238, 238, 238);
+	static final int BLANK = TrialSchedule.LETTERS; // the empty cell in the atlas
+
+	final TrialSchedule schedule;
+	final StimulusCanvas canvas;
+	final int numberOfItems;
+	final int columns;
+	final int rows;
+	JPanel experimentPanel;
+
+	int trial = -1; // whose letters are shown
+	boolean cueShown;
+	boolean gridShown;
+	int prepared = -1; // the trial whose search display the canvas has ready
+
+	// the prepared trial's search display (target and grid), rendered by prepare()
+	final StimulusCanvas.Scene searchFrame = new StimulusCanvas.Scene()
+	{
+		public void paint(Graphics2D g, int width, int height)
+		{
+			paintDisplay(g, width, height, prepared, true, true);
+		}
+	};
+
+	// pre-rendered cells (A to Z, then blank) at the size of the current layout
+	BufferedImage atlas;
+	int cell; // px, scaled down if the grid doesn't fit the canvas
+
+	GridPresenter(int numberOfItemsArg, TrialSchedule scheduleArg, StimulusCanvas canvasArg)
+	{
+		numberOfItems = numberOfItemsArg;
+		schedule = scheduleArg;
+		canvas = canvasArg;
+
+		// as square as possible, for any set size
+		columns = (int)Math.ceil(Math.sqrt(numberOfItems));
+		rows = (numberOfItems + columns - 1) / columns;
+
+		canvas.setPreferredSize(new Dimension(Math.max(300, width(CELL)), Math.max(300, height(CELL))));
+		experimentPanel = new JPanel(new BorderLayout());
+		experimentPanel.add(canvas, BorderLayout.CENTER);
+	}
+
+	// the display (target, gap, grid, margins) at a given cell size
+	private int width(int c)
+	{
+		return 2 * MARGIN + c + GAP + columns * c;
+	}
+
+	private int height(int c)
+	{
+		return 2 * MARGIN + rows * c;
+	}
+
+	public JComponent component()
+	{
+		return experimentPanel;
+	}
+
+	public boolean hasCue()
+	{
+		return true;
+	}
+
+	public StimulusCanvas canvas()
+	{
+		return canvas;
+	}
+
+	public void reset()
+	{
+		cueShown = false;
+		gridShown = false;
+		canvas.show(this);
+	}
+
+	// the whole search display, rendered while the previous trial's blank grid is up
+	public void prepare(int trialArg)
+	{
+		prepared = trialArg;
+		canvas.prepare(searchFrame);
+	}
+
+	public void cue(int trialArg)
+	{
+		trial = trialArg;
+		cueShown = true;
+		canvas.show(this);
+	}
+
+	// the grid was drawn up with the schedule (target, if any, already in place)
+	public void present(int trialArg)
+	{
+		trial = trialArg;
+		gridShown = true;
+		if (trial == prepared)
+			canvas.showPrepared(this);
+		else
+			canvas.show(this);
+	}
+
+	public long onsetTime(long presented)
+	{
+		return presented;
+	}
+
+	public void clear(int trialArg)
+	{
+		cueShown = false;
+		gridShown = false;
+		canvas.show(this);
+	}
+
+	public void paint(Graphics2D g, int width, int height)
+	{
+		paintDisplay(g, width, height, trial, cueShown, gridShown);
+	}
+
+	// trial t's target (if cue) and grid (if grid), blank cells otherwise; one pass: a copy from the
+	// atlas per cell, no layout and no components
+	private void paintDisplay(Graphics2D g, int width, int height, int t, boolean cue, boolean grid)
+	{
+		layout(g, width, height);
+		g.setColor(BACKGROUND);
+		g.fillRect(0, 0, width, height);
+
+		int x0 = (width - width(cell)) / 2 + MARGIN;
+		int y0 = (height - height(cell)) / 2 + MARGIN;
+		drawCell(g, cue ? schedule.target[t] : BLANK, x0, y0 + (rows - 1) * cell / 2);
+
+		int gx = x0 + cell + GAP;
+		for (int i = 0; i < numberOfItems; ++i)
+			drawCell(g, grid ? schedule.letter(t, i) : BLANK, gx + i % columns * cell, y0 + i / columns * cell);
+	}
+
+	private void drawCell(Graphics2D g, int glyph, int x, int y)
+	{
+		int sx = glyph * cell;
+		g.drawImage(atlas, x, y, x + cell, y + cell, sx, 0, sx + cell, cell, null);
+	}
+
+	// the cell size that fits the canvas, and an atlas at that size (redone only if it changes)
+	private void layout(Graphics2D g, int width, int height)
+	{
+		int c = CELL;
+		while (c > 8 && (width(c) > width || height(c) > height))
+			--c;
+		if (atlas != null && c == cell)
+			return;
+		cell = c;
+
+		atlas = g.getDeviceConfiguration().createCompatibleImage((BLANK + 1) * cell, cell);
+		Graphics2D a = atlas.createGraphics();
+		try
+		{
+			a.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+			a.setColor(BACKGROUND);
+			a.fillRect(0, 0, atlas.getWidth(), cell);
+			a.setFont(new Font("sansserif", Font.PLAIN, Math.max(6, FONT_SIZE * cell / CELL)));
+			FontMetrics fm = a.getFontMetrics();
+			for (int k = 0; k <= BLANK; ++k)
+			{
+				int x = k * cell;
+				a.setColor(Color.gray);
+				a.drawRect(x, 0, cell - 1, cell - 1);
+				if (k == BLANK)
+					continue;
+				String s = Character.toString((char)('A' + k));
+				a.setColor(Color.black);
+				a.drawString(s, x + (cell - fm.stringWidth(s)) / 2, (cell - fm.getHeight()) / 2 + fm.getAscent());
+			}
+		} finally
+		{
+			a.dispose();
+		}
+	}
+}
@@ -0,0 +1,108 @@
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+import java.awt.event.KeyEvent;
+
+// -----------------------------------------------------------------
+// InputCapture - every key event, whichever component has the focus
+// -----------------------------------------------------------------
+
+/**
+ * Takes the keyboard out of Swing's focus dispatch. A <code>KeyListener</code> on the trial
+ * dialog hears only what reaches the focus owner: while another window of the application has the
+ * focus (a message box, say), or while focus is changing hands and the focus manager holds
+ * keystrokes back as type-ahead, responses are lost or delayed.
+ * <p>
+ * This event queue is pushed onto the system queue once, at startup, so every event the EDT
+ * dispatches goes through {@link #dispatchEvent} first. Key events are timed there, before the
+ * focus manager or any component sees them, and presses and releases are sent to the
+ * {@link Listener} set with {@link #route} instead of to the components. Only keys the operating
+ * system gives the application at all can be captured.
+ * <p>
+ * The capture counts the key events it routes, the presses that never arrived (dropped: a key is
+ * released that was never seen going down), and the events handled longer than the budget after
+ * they were generated (late).
+ */
+class InputCapture extends EventQueue
+{
+	interface Listener
+	{
+		// when is the time the event was generated, handled the time it got here (both
+		// ExperimentClock readings)
+		void keyPressed(int keyCode, char keyChar, long when, long handled);
+
+		void keyReleased(int keyCode, long when, long handled);
+	}
+
+	private final Clock clock; // the engine's time base
+	private final long budget; // ns, generated to handled
+	private final boolean[] down = new boolean[KeyTableMapping.KEY_CODES]; // keys seen pressed
+	private volatile Listener listener; // set from any thread, used on the EDT
+
+	// written on the EDT only, read from the thread that ran the block
+	volatile int events; // routed to the listener
+	volatile int dropped; // releases of keys whose press never came
+	volatile int late; // handled over the budget after being generated
+
+	private InputCapture(Clock clockArg, long budgetArg)
+	{
+		clock = clockArg;
+		budget = budgetArg;
+	}
+
+	// put a capture in front of the system event queue; events handled later than budgetMillis
+	// after they were generated count as late
+	static InputCapture install(Clock clock, int budgetMillis)
+	{
+		InputCapture capture = new InputCapture(clock, ExperimentClock.fromMillis(budgetMillis));
+		Toolkit.getDefaultToolkit().getSystemEventQueue().push(capture);
+		return capture;
+	}
+
+	// send key events to listenerArg from now on (null: back to the components)
+	void route(Listener listenerArg)
+	{
+		listener = listenerArg;
+	}
+
+	protected void dispatchEvent(AWTEvent e)
+	{
+		if (!(e instanceof KeyEvent))
+		{
+			super.dispatchEvent(e);
+			return;
+		}
+		long handled = clock.now();
+		KeyEvent ke = (KeyEvent)e;
+		int id = ke.getID();
+		int keyCode = ke.getKeyCode();
+		boolean wasDown = false;
+		if (keyCode >= 0 && keyCode < down.length && id != KeyEvent.KEY_TYPED)
+		{
+			wasDown = down[keyCode];
+			down[keyCode] = id == KeyEvent.KEY_PRESSED;
+		}
+
+		Listener l = listener;
+		if (l == null)
+		{
+			super.dispatchEvent(e);
+			return;
+		}
+		if (id == KeyEvent.KEY_TYPED)
+			return; // its press has been routed already
+
+		long when = ExperimentClock.eventTime(ke, handled);
+		++events;
+		if (handled - when > budget)
+			++late;
+		if (id == KeyEvent.KEY_PRESSED)
+			l.keyPressed(keyCode, ke.getKeyChar(), when, handled);
+		else if (id == KeyEvent.KEY_RELEASED)
+		{
+			if (!wasDown && keyCode >= 0 && keyCode < down.length)
+				++dropped;
+			l.keyReleased(keyCode, when, handled);
+		}
+	}
+}
@@ -0,0 +1,59 @@
+import java.util.Locale;
+
+import javax.swing.KeyStroke;
+
+// -----------------------------------------------------------------
+// KeyTableMapping - a response key per stimulus, looked up in a flat table
+// -----------------------------------------------------------------
+
+/**
+ * The N-choice mapping (SR, PM, NM, CM): stimulus i is answered with key i of the configured
+ * response keys, or with the mirror-image key (N - 1 - i) when the mapping is reversed. The keys
+ * are compiled into a table indexed by (stimulus, key code), so classifying a key press is one
+ * bounds test and one array load, whatever the number of choices.
+ */
+class KeyTableMapping implements ResponseMapping
+{
+	static final int KEY_CODES = 256; // VK_ codes of the ordinary keys are all below this
+
+	private final byte[] table; // outcome of stimulus s and key k at s * KEY_CODES + k
+
+	KeyTableMapping(int[] keyCodes, boolean reversed)
+	{
+		int n = keyCodes.length;
+		table = new byte[n * KEY_CODES]; // all IGNORE
+		for (int s = 0; s < n; ++s)
+		{
+			int correct = reversed ? n - 1 - s : s;
+			for (int k = 0; k < n; ++k)
+				table[s * KEY_CODES + keyCodes[k]] = (byte)(k == correct ? CORRECT : WRONG);
+		}
+	}
+
+	public int classify(int stimulus, int keyCode)
+	{
+		if (keyCode < 0 || keyCode >= KEY_CODES)
+			return IGNORE;
+		return table[stimulus * KEY_CODES + keyCode];
+	}
+
+	// key codes from a list of key names as in KeyStroke ("LEFT RIGHT", "D F J K", ...)
+	static int[] parseKeys(String keys, int n)
+	{
+		String[] names = keys.trim().split("[\\s,]+");
+		if (names.length != n)
+			throw new IllegalArgumentException(n + " response keys needed, not " + names.length + ": " + keys);
+		int[] keyCodes = new int[n];
+		for (int i = 0; i < n; ++i)
+		{
+			KeyStroke ks = KeyStroke.getKeyStroke(names[i].toUpperCase(Locale.US));
+			if (ks == null || ks.getKeyCode() <= 0 || ks.getKeyCode() >= KEY_CODES)
+				throw new IllegalArgumentException("Not a usable response key: " + names[i]);
+			keyCodes[i] = ks.getKeyCode();
+			for (int j = 0; j < i; ++j)
+				if (keyCodes[j] == keyCodes[i])
+					throw new IllegalArgumentException("Response key used twice: " + names[i]);
+		}
+		return keyCodes;
+	}
+}
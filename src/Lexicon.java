@@ -0,0 +1,309 @@
+import java.io.*;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+// -----------------------------------------------------------------
+// Lexicon - the word list, compiled to an indexed binary file
+// -----------------------------------------------------------------
+
+/**
+ * The words of <code>d1-word.txt</code> in a compact binary form, sorted by length and then first
+ * letter, with an index of where each (length, first letter) group starts. The file is built once
+ * with
+ *
+ * <pre>
+ *     java -cp bin Lexicon [d1-word.txt [d1-word.lex]]
+ * </pre>
+ *
+ * and at run time {@link #load()} memory-maps it (or, from inside the Jar, reads it in one go);
+ * the words themselves are never turned into Strings unless asked for. Only modes that show words
+ * need it, so nothing loads it up front.
+ * <p>
+ * Picking a random word of a given length, and a matched (same word) or unmatched (another word of
+ * the same length, optionally with the same first letter) partner for it, takes constant time and
+ * allocates nothing.
+ * <p>
+ * File layout (big-endian): magic, number of words, longest length, the group index
+ * ((longest + 1) * 27 + 1 word numbers; group 26 of each length is for words not starting with a
+ * to z), each word's byte offset (words + 1), then the words' characters (ISO-8859-1).
+ */
+class Lexicon
+{
+	static final String TEXT = "d1-word.txt";
+	static final String FILE = "d1-word.lex";
+
+	private static final int MAGIC = 0x4C455831; // "LEX1"
+	private static final int GROUPS = 27; // a to z, and anything else
+
+	private final ByteBuffer buf;
+	private final int size;
+	private final int maxLength;
+	private final int[] index; // first word of each (length, first letter) group
+	private final int offsets; // position of the offset table in buf
+	private final int chars; // position of the characters
+
+	private Lexicon(ByteBuffer bufArg) throws IOException
+	{
+		buf = bufArg;
+		if (buf.getInt(0) != MAGIC)
+			throw new IOException("Not a lexicon file");
+		size = buf.getInt(4);
+		maxLength = buf.getInt(8);
+		index = new int[(maxLength + 1) * GROUPS + 1];
+		for (int i = 0; i < index.length; ++i)
+			index[i] = buf.getInt(12 + 4 * i);
+		offsets = 12 + 4 * index.length;
+		chars = offsets + 4 * (size + 1);
+	}
+
+	// the compiled lexicon: d1-word.lex as a file (memory-mapped), or on the classpath (read into
+	// memory), or failing both compiled on the spot from d1-word.txt
+	static Lexicon load() throws IOException
+	{
+		File file = new File(FILE);
+		URL url = Lexicon.class.getClassLoader().getResource(FILE);
+		if (!file.isFile() && url != null && url.getProtocol().equals("file"))
+			try
+			{
+				file = new File(url.toURI());
+			} catch (URISyntaxException e)
+			{
+			}
+		if (file.isFile())
+			return map(file);
+
+		InputStream in = url != null ? url.openStream() : null;
+		if (in != null)
+			return new Lexicon(ByteBuffer.wrap(readAll(in)));
+
+		in = Lexicon.class.getClassLoader().getResourceAsStream(TEXT);
+		if (in == null)
+			throw new FileNotFoundException(TEXT);
+		return new Lexicon(ByteBuffer.wrap(compile(in)));
+	}
+
+	static Lexicon map(File file) throws IOException
+	{
+		RandomAccessFile f = new RandomAccessFile(file, "r");
+		try
+		{
+			FileChannel ch = f.getChannel();
+			return new Lexicon(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+		} finally
+		{
+			f.close(); // the mapping stays valid
+		}
+	}
+
+	int size()
+	{
+		return size;
+	}
+
+	int maxLength()
+	{
+		return maxLength;
+	}
+
+	// how many words have the given length
+	int count(int length)
+	{
+		if (length < 0 || length > maxLength)
+			return 0;
+		return index[(length + 1) * GROUPS] - index[length * GROUPS];
+	}
+
+	int length(int word)
+	{
+		return offset(word + 1) - offset(word);
+	}
+
+	char charAt(int word, int k)
+	{
+		return (char)(buf.get(chars + offset(word) + k) & 0xFF);
+	}
+
+	// copy the word's characters into dst (at least length(word) long)
+	void getChars(int word, char[] dst)
+	{
+		int p = chars + offset(word);
+		int n = length(word);
+		for (int k = 0; k < n; ++k)
+			dst[k] = (char)(buf.get(p + k) & 0xFF);
+	}
+
+	String word(int word)
+	{
+		char[] c = new char[length(word)];
+		getChars(word, c);
+		return new String(c);
+	}
+
+	// ------------
+	// Sampling
+	// ------------
+
+	// a random word of the given length, or -1 if there is none
+	int random(int length, SplitMix r)
+	{
+		int n = count(length);
+		return n == 0 ? -1 : index[length * GROUPS] + r.nextInt(n);
+	}
+
+	// a random word of the same length as the given one, but not it (sameInitial: also with the same
+	// first letter), or -1 if there is none
+	int other(int word, boolean sameInitial, SplitMix r)
+	{
+		int g = group(word);
+		int first = sameInitial ? index[g] : index[g - g % GROUPS];
+		int end = sameInitial ? index[g + 1] : index[g - g % GROUPS + GROUPS];
+		int n = end - first - 1;
+		if (n <= 0)
+			return -1;
+		int w = first + r.nextInt(n);
+		return w >= word ? w + 1 : w;
+	}
+
+	// a pair of words of the given length into pair[0..1]: the same word twice if match, otherwise
+	// two different words (sameInitial: starting with the same letter, where there is one); false if
+	// there are no (or not enough) words of that length
+	boolean pair(int length, boolean match, boolean sameInitial, SplitMix r, int[] pair)
+	{
+		int w = random(length, r);
+		if (w < 0)
+			return false;
+		pair[0] = w;
+		if (match)
+		{
+			pair[1] = w;
+			return true;
+		}
+		int o = sameInitial ? other(w, true, r) : -1;
+		if (o < 0)
+			o = other(w, false, r);
+		pair[1] = o;
+		return o >= 0;
+	}
+
+	private int offset(int word)
+	{
+		return buf.getInt(offsets + 4 * word);
+	}
+
+	// the (length, first letter) group a word is in
+	private int group(int word)
+	{
+		return groupOf(length(word), charAt(word, 0));
+	}
+
+	// -----------
+	// Build step
+	// -----------
+
+	// the lexicon file's contents for a word list, one word per line
+	static byte[] compile(InputStream text) throws IOException
+	{
+		byte[][] words = new byte[1024][];
+		int n = 0;
+		int maxLength = 0;
+		BufferedReader br = new BufferedReader(new InputStreamReader(text, "ISO-8859-1"));
+		try
+		{
+			String s;
+			while ((s = br.readLine()) != null)
+			{
+				s = s.trim();
+				if (s.length() == 0)
+					continue;
+				if (n == words.length)
+					words = Arrays.copyOf(words, 2 * n);
+				words[n++] = s.getBytes("ISO-8859-1");
+				maxLength = Math.max(maxLength, s.length());
+			}
+		} finally
+		{
+			br.close();
+		}
+
+		// counting sort by group, keeping the list's order within each
+		int[] index = new int[(maxLength + 1) * GROUPS + 1];
+		for (int i = 0; i < n; ++i)
+			++index[groupOf(words[i]) + 1];
+		for (int g = 1; g < index.length; ++g)
+			index[g] += index[g - 1];
+		int[] next = index.clone();
+		byte[][] sorted = new byte[n][];
+		int total = 0;
+		for (int i = 0; i < n; ++i)
+		{
+			sorted[next[groupOf(words[i])]++] = words[i];
+			total += words[i].length;
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(12 + 4 * (index.length + n + 1) + total);
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(MAGIC);
+		out.writeInt(n);
+		out.writeInt(maxLength);
+		for (int g = 0; g < index.length; ++g)
+			out.writeInt(index[g]);
+		int offset = 0;
+		for (int i = 0; i < n; ++i)
+		{
+			out.writeInt(offset);
+			offset += sorted[i].length;
+		}
+		out.writeInt(offset);
+		for (int i = 0; i < n; ++i)
+			out.write(sorted[i]);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	private static int groupOf(byte[] word)
+	{
+		return groupOf(word.length, (char)(word[0] & 0xFF));
+	}
+
+	private static int groupOf(int length, char first)
+	{
+		int c = Character.toLowerCase(first) - 'a';
+		return length * GROUPS + (c >= 0 && c < 26 ? c : 26);
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException
+	{
+		try
+		{
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] b = new byte[8192];
+			for (int n; (n = in.read(b)) > 0;)
+				bytes.write(b, 0, n);
+			return bytes.toByteArray();
+		} finally
+		{
+			in.close();
+		}
+	}
+
+	// compile a word list: java Lexicon [text-file [lexicon-file]]
+	public static void main(String[] args) throws IOException
+	{
+		String text = args.length > 0 ? args[0] : TEXT;
+		String lex = args.length > 1 ? args[1] : FILE;
+		byte[] b = compile(new FileInputStream(text));
+		FileOutputStream out = new FileOutputStream(lex);
+		try
+		{
+			out.write(b);
+		} finally
+		{
+			out.close();
+		}
+		Lexicon l = new Lexicon(ByteBuffer.wrap(b));
+		System.out.println(lex + ": " + l.size() + " words, " + b.length + " bytes");
+	}
+}
@@ -0,0 +1,14 @@
+import java.awt.event.KeyEvent;
+
+// -----------------------------------------------------------------
+// MatchMapping - F or J if the target is present (match = 1), any other key if not (VS)
+// -----------------------------------------------------------------
+
+class MatchMapping implements ResponseMapping
+{
+	public int classify(int match, int keyCode)
+	{
+		boolean saysMatch = keyCode == KeyEvent.VK_F || keyCode == KeyEvent.VK_J;
+		return saysMatch == (match == 1) ? CORRECT : WRONG;
+	}
+}
@@ -0,0 +1,129 @@
+import java.awt.*;
+
+import javax.swing.*;
+
+// -----------------------------------------------------------------
+// PanelPresenter - N panels (2, 4, 8, ...); the stimulus one turns red
+// -----------------------------------------------------------------
+
+class PanelPresenter implements StimulusPresenter, StimulusCanvas.Scene
+{
+	static final int MAX_COLUMNS = 4;
+	static final int SIZE = 600; // of the panel area, centred on the canvas
+
+	final TrialSchedule schedule;
+	final StimulusCanvas canvas;
+	final int choices;
+	final int columns;
+	final int rows;
+	final Color[] idle;
+	JPanel experimentPanel;
+	int lit = -1; // the panel showing the stimulus, -1 for none
+	int prepared = -1; // the trial whose frame the canvas has ready
+	int next = -1; // ... and its lit panel
+
+	// the next trial's stimulus frame, rendered by prepare()
+	final StimulusCanvas.Scene stimulusFrame = new StimulusCanvas.Scene()
+	{
+		public void paint(Graphics2D g, int width, int height)
+		{
+			paintPanels(g, width, height, next);
+		}
+	};
+
+	PanelPresenter(int choicesArg, TrialSchedule scheduleArg, StimulusCanvas canvasArg)
+	{
+		choices = choicesArg;
+		schedule = scheduleArg;
+		canvas = canvasArg;
+
+		// up to four panels in a row, more rows as needed, always filling SIZE x SIZE
+		columns = Math.min(choices, MAX_COLUMNS);
+		rows = (choices + MAX_COLUMNS - 1) / MAX_COLUMNS;
+		idle = new Color[choices];
+		for (int i = 0; i < choices; ++i)
+			// checkered, so neighbouring panels can be told apart
+			idle[i] = (i % columns + i / columns) % 2 == 0 ? Color.gray : Color.DARK_GRAY;
+
+		experimentPanel = new JPanel(new BorderLayout());
+		experimentPanel.add(canvas, BorderLayout.CENTER);
+	}
+
+	public JComponent component()
+	{
+		return experimentPanel;
+	}
+
+	public boolean hasCue()
+	{
+		return false;
+	}
+
+	public StimulusCanvas canvas()
+	{
+		return canvas;
+	}
+
+	public void reset()
+	{
+		lit = -1;
+		canvas.show(this);
+	}
+
+	public void prepare(int trial)
+	{
+		next = schedule.stimulus[trial];
+		prepared = trial;
+		canvas.prepare(stimulusFrame);
+	}
+
+	public void cue(int trial)
+	{
+	}
+
+	// the panel is up once the frame has been flipped
+	public void present(int trial)
+	{
+		lit = schedule.stimulus[trial];
+		if (trial == prepared)
+			canvas.showPrepared(this);
+		else
+			canvas.show(this);
+	}
+
+	public long onsetTime(long presented)
+	{
+		return presented;
+	}
+
+	public void clear(int trial)
+	{
+		lit = -1;
+		canvas.show(this);
+	}
+
+	public void paint(Graphics2D g, int width, int height)
+	{
+		paintPanels(g, width, height, lit);
+	}
+
+	// the panels, with panel number on lit (-1: none)
+	private void paintPanels(Graphics2D g, int width, int height, int on)
+	{
+		g.setColor(Color.black);
+		g.fillRect(0, 0, width, height);
+		int x0 = (width - SIZE) / 2;
+		int y0 = (height - SIZE) / 2;
+		for (int i = 0; i < choices; ++i)
+		{
+			int c = i % columns;
+			int r = i / columns;
+			int x = x0 + c * SIZE / columns;
+			int y = y0 + r * SIZE / rows;
+			g.setColor(i == on ? Color.red : idle[i]);
+			g.fillRect(x, y, x0 + (c + 1) * SIZE / columns - x, y0 + (r + 1) * SIZE / rows - y);
+		}
+		g.setColor(Color.gray);
+		g.drawRect(x0, y0, SIZE - 1, SIZE - 1);
+	}
+}
@@ -0,0 +1,396 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// -----------------------------------------------------------------
+// PowerAnalysis - Monte Carlo power curves for a two-group design
+// -----------------------------------------------------------------
+
+/**
+ * Estimates how many trials per block and participants per group are needed to detect a group
+ * difference (the F3: Group factor of the pilot data) in mean reaction time.
+ * <p>
+ * For every combination of mode, set size, trials per block, and group size, many virtual
+ * experiments are run: each participant gets their own mean RT (the model's mean, plus the group
+ * effect for group 2, plus between-participant noise) and runs a complete simulated block
+ * ({@link SimulatedParticipant}, in memory, on a {@link VirtualClock}); the two groups' per
+ * participant means are compared with Welch's t-test. The power is the fraction of experiments
+ * that find the difference at the given alpha.
+ * <p>
+ * The experiments are spread over all cores with a fork/join pool. Each task splits its
+ * {@link SplitMix} stream for the half it forks, so tasks share no generator, and each returns its
+ * own counts, which are added together as the tasks join: no locks, no shared counters. With a
+ * given seed the results are the same on any number of cores.
+ *
+ * <pre>
+ *     java PowerAnalysis -modes VS -items 4,16,32 -trials 10,20,40 -n 4,8,16 -experiments 1000
+ *     java PowerAnalysis -modes VS -pilot ReactionTimeExperiment-ReactionTime.txt
+ * </pre>
+ *
+ * With <code>-pilot</code>, the group effect and between-participant SD for each visual search set
+ * size are taken from the pilot data (columns N x Block, then Group) instead of -effect/-between.
+ * The power curves are printed as CSV.
+ */
+class PowerAnalysis
+{
+	static final String USAGE = "usage: java PowerAnalysis [-modes SR,PM,NM,CM,VS] [-items 1,2,4,8,16,32]"
+			+ " [-trials 10,20,40] [-n 4,8,16,24] [-experiments n] [-effect ms] [-between ms] [-errors p]"
+			+ " [-alpha p] [-pilot file] [-threads n] [-seed n]";
+
+	static final int THRESHOLD = 4; // experiments per leaf task
+	static final int[] PILOT_SET_SIZES = { 1, 2, 4, 8, 16, 32 }; // pilot columns, two blocks each
+
+	// one point of a power curve
+	static class Cell
+	{
+		ReactionTimeExperimentConfiguration c;
+		double mu; // model mean for group 1 (ms)
+		double effect; // group 2 minus group 1 (ms)
+		double between; // between-participant SD (ms)
+		int n; // participants per group
+	}
+
+	final Cell[] cells;
+	final int experiments; // per cell
+	final double errorRate;
+	final double alpha;
+
+	PowerAnalysis(Cell[] cellsArg, int experimentsArg, double errorRateArg, double alphaArg)
+	{
+		cells = cellsArg;
+		experiments = experimentsArg;
+		errorRate = errorRateArg;
+		alpha = alphaArg;
+	}
+
+	// power (0..1) of each cell
+	double[] run(ForkJoinPool pool, long seed)
+	{
+		long[] hits = pool.invoke(new Runner(0, cells.length * experiments, new SplitMix(seed)));
+		double[] power = new double[cells.length];
+		for (int i = 0; i < cells.length; ++i)
+			power[i] = hits[i] / (double)experiments;
+		return power;
+	}
+
+	// runs experiments lo..hi-1 of the flattened (cell, experiment) list; returns hits per cell
+	class Runner extends RecursiveTask<long[]>
+	{
+		private static final long serialVersionUID = 1L;
+
+		final int lo;
+		final int hi;
+		final SplitMix random;
+
+		Runner(int loArg, int hiArg, SplitMix randomArg)
+		{
+			lo = loArg;
+			hi = hiArg;
+			random = randomArg;
+		}
+
+		@Override
+		protected long[] compute()
+		{
+			if (hi - lo <= THRESHOLD)
+			{
+				long[] hits = new long[cells.length];
+				for (int j = lo; j < hi; ++j)
+					if (experiment(cells[j / experiments], random))
+						++hits[j / experiments];
+				return hits;
+			}
+			int mid = (lo + hi) >>> 1;
+			Runner left = new Runner(lo, mid, random.split());
+			left.fork();
+			long[] hits = new Runner(mid, hi, random).compute();
+			long[] other = left.join();
+			for (int i = 0; i < hits.length; ++i)
+				hits[i] += other[i];
+			return hits;
+		}
+	}
+
+	// one virtual experiment; true if it finds the group difference
+	boolean experiment(Cell cell, SplitMix random)
+	{
+		String mode = cell.c.getMode();
+		double[][] means = new double[2][cell.n];
+		for (int g = 0; g < 2; ++g)
+			for (int p = 0; p < cell.n; ++p)
+			{
+				double mu = cell.mu + g * cell.effect + cell.between * random.nextGaussian();
+				ExperimentBlock block = new ExperimentBlock(cell.c, null, random.nextLong());
+				SimulatedParticipant sp = new SimulatedParticipant(mu, SimulatedParticipant.defaultSigma(mode),
+						SimulatedParticipant.defaultTau(mode), errorRate, random.nextLong());
+				try
+				{
+					sp.run(block);
+				} catch (IOException e) // not reached: the block isn't opened, nothing is written
+				{
+					throw new IllegalStateException(e);
+				}
+				means[g][p] = block.stats.all.mean();
+			}
+		return welchP(means[0], means[1]) < alpha;
+	}
+
+	// ------------
+	// Statistics
+	// ------------
+
+	// two-tailed p of Welch's t-test (unequal variances); each sample needs at least two values
+	static double welchP(double[] a, double[] b)
+	{
+		RunningStats sa = new RunningStats();
+		RunningStats sb = new RunningStats();
+		for (int i = 0; i < a.length; ++i)
+			sa.add(a[i]);
+		for (int i = 0; i < b.length; ++i)
+			sb.add(b[i]);
+		double va = sa.variance() / a.length;
+		double vb = sb.variance() / b.length;
+		if (va + vb == 0.0)
+			return sa.mean() == sb.mean() ? 1.0 : 0.0;
+		double t = (sa.mean() - sb.mean()) / Math.sqrt(va + vb);
+		double df = (va + vb) * (va + vb) / (va * va / (a.length - 1) + vb * vb / (b.length - 1));
+		return incompleteBeta(df / 2.0, 0.5, df / (df + t * t));
+	}
+
+	// regularized incomplete beta function I_x(a, b)
+	static double incompleteBeta(double a, double b, double x)
+	{
+		if (x <= 0.0)
+			return 0.0;
+		if (x >= 1.0)
+			return 1.0;
+		double front = Math.exp(logGamma(a + b) - logGamma(a) - logGamma(b) + a * Math.log(x) + b
+				* Math.log(1.0 - x));
+		if (x < (a + 1.0) / (a + b + 2.0))
+			return front * betaFraction(a, b, x) / a;
+		return 1.0 - front * betaFraction(b, a, 1.0 - x) / b;
+	}
+
+	// continued fraction for the incomplete beta function (modified Lentz)
+	private static double betaFraction(double a, double b, double x)
+	{
+		final double TINY = 1e-300;
+		double c = 1.0;
+		double d = 1.0 - (a + b) * x / (a + 1.0);
+		d = 1.0 / (Math.abs(d) < TINY ? TINY : d);
+		double h = d;
+		for (int m = 1; m <= 300; ++m)
+		{
+			int m2 = 2 * m;
+			double aa = m * (b - m) * x / ((a + m2 - 1.0) * (a + m2));
+			d = 1.0 + aa * d;
+			d = 1.0 / (Math.abs(d) < TINY ? TINY : d);
+			c = 1.0 + aa / c;
+			c = Math.abs(c) < TINY ? TINY : c;
+			h *= d * c;
+			aa = -(a + m) * (a + b + m) * x / ((a + m2) * (a + m2 + 1.0));
+			d = 1.0 + aa * d;
+			d = 1.0 / (Math.abs(d) < TINY ? TINY : d);
+			c = 1.0 + aa / c;
+			c = Math.abs(c) < TINY ? TINY : c;
+			double delta = d * c;
+			h *= delta;
+			if (Math.abs(delta - 1.0) < 1e-12)
+				break;
+		}
+		return h;
+	}
+
+	// log of the gamma function (Lanczos approximation), x > 0
+	static double logGamma(double x)
+	{
+		final double[] G = { 76.18009172947146, -86.50532032941677, 24.01409824083091, -1.231739572450155,
+				0.1208650973866179e-2, -0.5395239384953e-5 };
+		double y = x;
+		double tmp = x + 5.5;
+		tmp -= (x + 0.5) * Math.log(tmp);
+		double ser = 1.000000000190015;
+		for (int j = 0; j < G.length; ++j)
+			ser += G[j] / ++y;
+		return -tmp + Math.log(2.5066282746310005 * ser / x);
+	}
+
+	// ----------
+	// Pilot data
+	// ----------
+
+	// visual search set size -> { group effect, between-participant SD } (ms) from the pilot file
+	static Map<Integer, double[]> readPilot(File file) throws IOException
+	{
+		List<double[]> rows = new ArrayList<double[]>();
+		BufferedReader br = new BufferedReader(new FileReader(file));
+		try
+		{
+			String s;
+			while ((s = br.readLine()) != null)
+			{
+				s = s.trim();
+				if (s.length() == 0 || s.indexOf(':') >= 0) // header (DV:, F1:, ...)
+					continue;
+				String[] f = s.split("\\s+");
+				if (f.length != 2 * PILOT_SET_SIZES.length + 1)
+					throw new IOException("Expected " + (2 * PILOT_SET_SIZES.length + 1) + " columns: " + s);
+				double[] row = new double[f.length];
+				for (int i = 0; i < f.length; ++i)
+					row[i] = Double.parseDouble(f[i]);
+				rows.add(row);
+			}
+		} finally
+		{
+			br.close();
+		}
+
+		Map<Integer, double[]> pilot = new HashMap<Integer, double[]>();
+		for (int k = 0; k < PILOT_SET_SIZES.length; ++k)
+		{
+			RunningStats[] group = { new RunningStats(), new RunningStats() };
+			for (double[] row : rows)
+			{
+				int g = (int)row[row.length - 1] == 2 ? 1 : 0;
+				group[g].add((row[2 * k] + row[2 * k + 1]) / 2.0); // mean of the two blocks
+			}
+			int n0 = group[0].count();
+			int n1 = group[1].count();
+			if (n0 < 2 || n1 < 2)
+				throw new IOException("Need two participants per group in " + file);
+			double pooled = ((n0 - 1) * group[0].variance() + (n1 - 1) * group[1].variance()) / (n0 + n1 - 2);
+			pilot.put(PILOT_SET_SIZES[k], new double[] { group[1].mean() - group[0].mean(), Math.sqrt(pooled) });
+		}
+		return pilot;
+	}
+
+	// ------------
+	// Command line
+	// ------------
+
+	public static void main(String[] args)
+	{
+		String[] modes = SimulatedParticipant.MODES;
+		int[] items = PILOT_SET_SIZES;
+		int[] trials = { 10, 20, 40 };
+		int[] groupSizes = { 4, 8, 16, 24 };
+		int experiments = 500;
+		double effect = 50.0;
+		double between = 80.0;
+		double errors = 0.05;
+		double alpha = 0.05;
+		File pilotFile = null;
+		int threads = Runtime.getRuntime().availableProcessors();
+		long seed = System.nanoTime();
+		Map<Integer, double[]> pilot = null;
+		try
+		{
+			for (int i = 0; i < args.length; i += 2)
+			{
+				String name = args[i];
+				if (i + 1 == args.length)
+					throw new IllegalArgumentException("Missing value for " + name);
+				String value = args[i + 1];
+				if (name.equals("-modes"))
+					modes = value.toUpperCase().split(",");
+				else if (name.equals("-items"))
+					items = parseInts(value);
+				else if (name.equals("-trials"))
+					trials = parseInts(value);
+				else if (name.equals("-n"))
+					groupSizes = parseInts(value);
+				else if (name.equals("-experiments"))
+					experiments = Integer.parseInt(value);
+				else if (name.equals("-effect"))
+					effect = Double.parseDouble(value);
+				else if (name.equals("-between"))
+					between = Double.parseDouble(value);
+				else if (name.equals("-errors"))
+					errors = Double.parseDouble(value);
+				else if (name.equals("-alpha"))
+					alpha = Double.parseDouble(value);
+				else if (name.equals("-pilot"))
+					pilotFile = new File(value);
+				else if (name.equals("-threads"))
+					threads = Integer.parseInt(value);
+				else if (name.equals("-seed"))
+					seed = Long.parseLong(value);
+				else
+					throw new IllegalArgumentException("Unknown option: " + name);
+			}
+			for (String m : modes)
+				if (!Arrays.asList(SimulatedParticipant.MODES).contains(m))
+					throw new IllegalArgumentException("Unknown mode: " + m);
+			for (int n : groupSizes)
+				if (n < 2)
+					throw new IllegalArgumentException("Need at least two participants per group");
+			if (experiments <= 0 || threads <= 0)
+				throw new IllegalArgumentException("Number of experiments and threads must be > 0");
+			if (pilotFile != null)
+				pilot = readPilot(pilotFile);
+		} catch (IOException e)
+		{
+			System.err.println("Can't read pilot data: " + e.getMessage());
+			System.exit(1);
+		} catch (RuntimeException e) // bad number, ...
+		{
+			System.err.println(e.getMessage() != null ? e.getMessage() : e.toString());
+			System.err.println(USAGE);
+			System.exit(1);
+		}
+
+		// every combination; set sizes only matter for visual search
+		List<Cell> list = new ArrayList<Cell>();
+		long simulatedTrials = 0;
+		for (String mode : modes)
+			for (int setSize : mode.equals("VS") ? items : new int[] { 1 })
+				for (int t : trials)
+					for (int n : groupSizes)
+					{
+						Cell cell = new Cell();
+						cell.c = new ReactionTimeExperimentConfiguration();
+						cell.c.setMode(mode);
+						cell.c.setNumberOfItems(setSize);
+						cell.c.setNumberOfTrials(t);
+						cell.mu = SimulatedParticipant.defaultMu(mode, 2, setSize);
+						cell.effect = effect;
+						cell.between = between;
+						if (pilot != null && mode.equals("VS") && pilot.containsKey(setSize))
+						{
+							cell.effect = pilot.get(setSize)[0];
+							cell.between = pilot.get(setSize)[1];
+						}
+						cell.n = n;
+						list.add(cell);
+						simulatedTrials += 2L * n * t * experiments;
+					}
+		Cell[] cells = list.toArray(new Cell[list.size()]);
+
+		long start = System.nanoTime();
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		double[] power = new PowerAnalysis(cells, experiments, errors, alpha).run(pool, seed);
+		pool.shutdown();
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		System.out.println("mode,items,trials,n_per_group,effect,between_sd,power");
+		for (int i = 0; i < cells.length; ++i)
+		{
+			Cell cell = cells[i];
+			System.out.println(String.format(Locale.US, "%s,%d,%d,%d,%.1f,%.1f,%.3f", cell.c.getMode(),
+					cell.c.getNumberOfItems(), cell.c.getNumberOfTrials(), cell.n, cell.effect, cell.between, power[i]));
+		}
+		System.err.println(String.format(Locale.US,
+				"%d experiments, %d simulated trials, %d threads, %.2f s (%.0f trials/s), alpha=%.3f, seed=%d",
+				cells.length * experiments, simulatedTrials, threads, seconds, simulatedTrials / seconds, alpha, seed));
+	}
+
+	private static int[] parseInts(String s)
+	{
+		String[] f = s.split(",");
+		int[] v = new int[f.length];
+		for (int i = 0; i < f.length; ++i)
+			v[i] = Integer.parseInt(f[i].trim());
+		return v;
+	}
+}
@@ -0,0 +1,164 @@
+import java.io.*;
+
+// -----------------------------------------------------------------
+// RTHistogram - fixed-memory, log-bucketed reaction time histogram
+// -----------------------------------------------------------------
+
+/**
+ * Histogram of reaction times with bounded relative error, for percentile queries (median, p90,
+ * p99, ...) without the raw data.
+ * <p>
+ * Times are recorded in microseconds. Values below 256 us get a bucket each; above that, every
+ * power-of-two range is split into 128 equal buckets, so a bucket is never wider than 1/128 of
+ * its lower bound (relative error under 0.8%) and the whole range up to 2^41 us (about 25 days)
+ * fits in a fixed array of 4,480 counters. Recording is O(1) and allocation-free.
+ * <p>
+ * Histograms from different blocks and participants merge by adding counters. Each block's
+ * histogram is saved next to its .sd2 file (extension <code>.hist</code>); running this class
+ * merges any number of them and prints the percentiles:
+ *
+ * <pre>
+ *     java RTHistogram ReactionTimeExperiment-P01-*-SR.hist ...
+ * </pre>
+ */
+class RTHistogram
+{
+	static final String SUFFIX = ".hist";
+
+	static final int SUB_BITS = 7;
+	static final int SUB = 1 << SUB_BITS; // buckets per power of two
+	static final int MAX_EXPONENT = 40;
+	static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB;
+
+	private static final int MAGIC = 0x52544831; // "RTH1"
+
+	private final long[] counts = new long[BUCKETS];
+	private long total;
+
+	// record a reaction time in ms
+	void add(double ms)
+	{
+		long us = Math.round(ms * 1000.0);
+		++counts[index(us < 0 ? 0 : us)];
+		++total;
+	}
+
+	void merge(RTHistogram h)
+	{
+		for (int i = 0; i < BUCKETS; ++i)
+			counts[i] += h.counts[i];
+		total += h.total;
+	}
+
+	long count()
+	{
+		return total;
+	}
+
+	// the value (ms) below which fraction p (0..1) of the recorded times fall; NaN if empty
+	double percentile(double p)
+	{
+		if (total == 0)
+			return Double.NaN;
+		long rank = Math.max(1, (long)Math.ceil(p * total));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; ++i)
+		{
+			seen += counts[i];
+			if (seen >= rank)
+				return (lowerBound(i) + (width(i) - 1) / 2.0) / 1000.0; // bucket midpoint
+		}
+		return Double.NaN; // not reached
+	}
+
+	static int index(long us)
+	{
+		if (us < 2 * SUB)
+			return (int)us;
+		int e = 63 - Long.numberOfLeadingZeros(us); // us in [2^e, 2^(e+1))
+		if (e > MAX_EXPONENT)
+			return BUCKETS - 1;
+		int shift = e - SUB_BITS;
+		return shift * SUB + (int)(us >> shift);
+	}
+
+	static long lowerBound(int i)
+	{
+		if (i < 2 * SUB)
+			return i;
+		int shift = i / SUB - 1;
+		return (long)(i % SUB + SUB) << shift;
+	}
+
+	static long width(int i)
+	{
+		return i < 2 * SUB ? 1 : 1L << (i / SUB - 1);
+	}
+
+	// ------------------
+	// Serialization
+	// ------------------
+
+	// sparse binary form: magic, total, number of non-empty buckets, then (index, count) pairs
+	void write(String fileName) throws IOException
+	{
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)));
+		try
+		{
+			int used = 0;
+			for (int i = 0; i < BUCKETS; ++i)
+				if (counts[i] != 0)
+					++used;
+			out.writeInt(MAGIC);
+			out.writeLong(total);
+			out.writeInt(used);
+			for (int i = 0; i < BUCKETS; ++i)
+				if (counts[i] != 0)
+				{
+					out.writeShort(i);
+					out.writeLong(counts[i]);
+				}
+		} finally
+		{
+			out.close();
+		}
+	}
+
+	static RTHistogram read(File file) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try
+		{
+			if (in.readInt() != MAGIC)
+				throw new IOException("Not a reaction time histogram: " + file);
+			RTHistogram h = new RTHistogram();
+			h.total = in.readLong();
+			int used = in.readInt();
+			for (int k = 0; k < used; ++k)
+			{
+				int i = in.readUnsignedShort();
+				if (i >= BUCKETS)
+					throw new IOException("Corrupt histogram: " + file);
+				h.counts[i] = in.readLong();
+			}
+			return h;
+		} finally
+		{
+			in.close();
+		}
+	}
+
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length == 0)
+		{
+			System.out.println("usage: java RTHistogram file" + SUFFIX + " ...");
+			return;
+		}
+		RTHistogram all = new RTHistogram();
+		for (String name : args)
+			all.merge(read(new File(name)));
+		System.out.println(String.format("files=%d n=%d p50=%.1f p90=%.1f p99=%.1f (ms)", args.length, all.count(),
+				all.percentile(0.5), all.percentile(0.9), all.percentile(0.99)));
+	}
+}
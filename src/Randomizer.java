@@ -0,0 +1,59 @@
+// -----------------------------------------------------------------
+// Randomizer - the block's random streams, one per purpose
+// -----------------------------------------------------------------
+
+/**
+ * All randomization of a block comes from here: an independent {@link SplitMix} stream for each
+ * purpose (stimulus side, foreperiod, letters and other appearance, match sequence), all derived
+ * from one seed. Drawing more from one stream (a longer search grid, say) never shifts another.
+ * <p>
+ * At every trial each stream is put at that trial's position ({@link #trial(int)}), so trial i
+ * always gets the same draws, whatever happened on earlier trials; this is what lets a resumed
+ * block carry on exactly. The default seed is derived from the participant and block codes (and
+ * mode and set size), so a session can be regenerated from its configuration alone; it is also
+ * written to the .sd2 file and the journal. Draws allocate nothing.
+ */
+class Randomizer
+{
+	final long seed;
+
+	final SplitMix side; // stimulus of each trial
+	final SplitMix foreperiod;
+	final SplitMix letters; // search letters, fonts
+	final SplitMix match; // visual search match/no-match sequence
+
+	private final SplitMix[] streams;
+	private final long[] start; // each stream's sequence start
+
+	Randomizer(long seedArg)
+	{
+		seed = seedArg;
+		SplitMix root = new SplitMix(seed);
+		side = root.split();
+		foreperiod = root.split();
+		letters = root.split();
+		match = root.split();
+		streams = new SplitMix[] { side, foreperiod, letters, match };
+		start = new long[streams.length];
+		for (int i = 0; i < streams.length; ++i)
+			start[i] = root.nextLong();
+		trial(-1); // block-level draws (e.g., the match sequence) come before the first trial's
+	}
+
+	// the default seed of a block
+	static long seedFor(ReactionTimeExperimentConfiguration c)
+	{
+		SplitMix s = new SplitMix(((long)c.getParticipantCode() << 32) ^ c.getBlockCode());
+		long h = s.nextLong();
+		for (int i = 0; i < c.getMode().length(); ++i)
+			h = h * 31 + c.getMode().charAt(i);
+		return new SplitMix(h ^ c.getNumberOfItems()).nextLong();
+	}
+
+	// put every stream at the start of trial i
+	void trial(int i)
+	{
+		for (int k = 0; k < streams.length; ++k)
+			streams[k].setPosition(start[k], i);
+	}
+}
@@ -1,11 +1,8 @@
 
-import sun.audio.*;
-
 import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.Clip;
 import javax.swing.*;
-import javax.swing.Timer;
 
 import java.applet.*;
 import java.awt.*;
@@ -21,6 +18,14 @@ public class ReactionTimeExperiment
 {
 	public static void main(String[] args)
 	{
+		// headless run with a model participant (see SimulatedParticipant)
+		if (args.length > 0 && args[0].equals("-simulate"))
+		{
+			System.setProperty("java.awt.headless", "true");
+			SimulatedParticipant.main(Arrays.copyOfRange(args, 1, args.length));
+			System.exit(0);
+		}
+
 		// use look and feel for my system (Win32)
 		try
 		{
@@ -29,12 +34,25 @@ public class ReactionTimeExperiment
 		{
 		}
 
-		// use setup to configure program
-		ReactionTimeExperimentConfiguration c = new ReactionTimeExperimentConfiguration();
-		ReactionTimeExperimentSetup s = new ReactionTimeExperimentSetup(null, c);
-		s.showLetterGuessingExperimentSetup(null);
+		// offer to finish a block that was interrupted (crash, power loss, ...)
+		ReactionTimeExperimentConfiguration c;
+		SessionJournal.Recovered rec = SessionJournal.findInterrupted(new File("."));
+		if (rec != null
+				&& JOptionPane.showConfirmDialog(null, "An interrupted block was found:\n" + rec
+						+ "\n\nResume it from the last completed trial?", "Resume",
+						JOptionPane.YES_NO_OPTION) == JOptionPane.YES_OPTION)
+			c = rec.config;
+		else
+		{
+			rec = null;
+
+			// use setup to configure program
+			c = new ReactionTimeExperimentConfiguration();
+			ReactionTimeExperimentSetup s = new ReactionTimeExperimentSetup(null, c);
+			s.showLetterGuessingExperimentSetup(null);
+		}
 
-		ReactionTimeExpFrame frame = new ReactionTimeExpFrame(c);
+		ReactionTimeExpFrame frame = new ReactionTimeExpFrame(c, rec);
 		frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 		frame.setTitle("ReactionTimeExperiment");
 		frame.pack();
@@ -59,14 +77,9 @@ class ReactionTimeExpFrame extends JFrame
 	// -----------------------------------------------------------------
 
 	private static final long serialVersionUID = 1L;
-	SRDialog sr; // simple reaction
-	PMDialog pm; // physical matching
-	NMDialog nm; // name matching
-	CMDialog cm; // class matching
-	VSDialog vs; // visual search
-	String[] word;
 	int numberOfItems;
 	int maxTrials;
+	String mode;
 	String modeName;
 
 	JDialog resultsDialog;
@@ -75,34 +88,24 @@ class ReactionTimeExpFrame extends JFrame
 
 	final Dimension D = new Dimension(300, 200); // experiment panel size
 
-	// private long t1;
-	// private long t2;
-	boolean begin = false;
-
-	int[] time;
-	char[] key;
-	int[] match;
-	int[] error;
-	int numberOfErrors;
-	int count = 0;
-	BufferedWriter bw1;
-	BufferedWriter bw2;
-	String mode;
-	String participantCode;
-	String blockCode;
+	ExperimentBlock block; // the trials' data and output files
+	TrialEngine engine; // runs the trials, whatever the mode
+	Clock clock = Clock.SYSTEM;
+	TrialScheduler scheduler; // runs the foreperiods
+	AudioEngine audio; // auditory stimuli (NM and CM modes only)
+	StimulusCanvas canvas; // visual stimuli, actively rendered (SR, PM, and VS modes)
+	InputCapture input; // every key event, straight from the event queue, to the engine
 
 	// -----------
 	// constructor
 	// -----------
 
-	public ReactionTimeExpFrame(ReactionTimeExperimentConfiguration c)
+	public ReactionTimeExpFrame(ReactionTimeExperimentConfiguration c, SessionJournal.Recovered rec)
 	{
 		// --------------------------------------
 		// declare and initialize local variables
 		// --------------------------------------
 
-		participantCode = c.getParticipantCode() < 10 ? "P0" + c.getParticipantCode() : "P" + c.getParticipantCode();
-		blockCode = c.getBlockCode() < 10 ? "B0" + c.getBlockCode() : "B" + c.getBlockCode();
 		maxTrials = c.getNumberOfTrials();
 		// System.out.println("maxTrials=" + maxTrials);
 		if (maxTrials == 0)
@@ -114,52 +117,29 @@ class ReactionTimeExpFrame extends JFrame
 		modeName = c.getModeName();
 		numberOfItems = c.getNumberOfItems();
 
-		time = new int[maxTrials];
-		key = new char[maxTrials];
-		match = new int[maxTrials];
-		error = new int[maxTrials];
-		numberOfErrors = 0;
-
-		// String modeInstructions = "";
-
-		// -------------------------------
-		// create and configure components
-		// -------------------------------
-
-		sr = new SRDialog(this); // simple reaction
-		pm = new PMDialog(this); // physical matching
-		nm = new NMDialog(this); // name matcing
-		cm = new CMDialog(this); // class matching
-		vs = new VSDialog(this, c.getNumberOfItems()); // visual search
-
-		// read 5-letter words into array...
-		BufferedReader br = null;
+		// draw up (or read back) the block's trial schedule
 		try
 		{
-			// br = new BufferedReader(new FileReader("d1-word.txt"));
-			// Added for executable Jar:
-			br = new BufferedReader(new InputStreamReader(getClass().getClassLoader()
-					.getResourceAsStream("d1-word.txt")));
-		} catch (Exception e)
+			block = new ExperimentBlock(c, rec);
+		} catch (IllegalArgumentException e)
 		{
-			showError("File not found: " + "d1-word.txt");
+			showError(e.getMessage());
 			System.exit(0);
 		}
-		Vector<String> v = new Vector<String>();
-		String s = "";
-		try
-		{
-			while ((s = br.readLine()) != null)
-				if (s.length() == 5)
-					v.add(s);
-		} catch (IOException e)
+		scheduler = new TrialScheduler();
+
+		// preload the auditory stimuli before the first trial
+		if (block.audio)
 		{
-			showError("Error reading word file!");
-			System.exit(0);
+			try
+			{
+				audio = new AudioEngine(clock, "Left.wav", "Right.wav");
+			} catch (Exception e)
+			{
+				showError("Can't open audio stimuli: " + e.getMessage());
+				System.exit(0);
+			}
 		}
-		word = new String[v.size()];
-		v.copyInto(word);
-		// ... done
 
 		resultsArea = new JTextArea(9, 20);
 		resultsArea.setFont(new Font("sansserif", Font.PLAIN, 18));
@@ -168,123 +148,65 @@ class ReactionTimeExpFrame extends JFrame
 		resultsPane.setFont(new Font("sansserif", Font.PLAIN, 18));
 		resultsDialog = resultsPane.createDialog(this, "Information");
 
+		// compile the response keys before any file is opened
+		ResponseMapping mapping = null;
+		try
+		{
+			mapping = block.responseMapping();
+		} catch (IllegalArgumentException e)
+		{
+			showError(e.getMessage());
+			System.exit(0);
+		}
+
 		// open output data files
 		try
 		{
-			String base = "ReactionTimeExperiment-" + participantCode + "-" + blockCode + "-" + mode;
-			if (mode.equals("VS"))
-				base += "-" + numberOfItems;
-			bw1 = new BufferedWriter(new FileWriter(base + ".sd1"));
-			bw2 = new BufferedWriter(new FileWriter(base + ".sd2"));
-			String header = "";
-			if (mode.equals("SR"))
-				header = sr.SD2Header();
-			else if (mode.equals("PM"))
-				header = pm.SD2Header();
-			else if (mode.equals("CM"))
-				header = cm.SD2Header();
-			else if (mode.equals("VS"))
-				header = vs.SD2Header();
-			bw2.write(header, 0, header.length());
-			bw2.flush();
+			block.open(rec);
 		} catch (IOException e)
 		{
 			showError("I/O error: can't open output data file(s)");
 			System.exit(0);
 		}
 
-		// Now, determine mode and show appropriate dialog
-		if (mode.equals("SR"))
+		// the mode decides what is presented
+		StimulusPresenter presenter;
+		String title = "Simple Reaction Time";
+		if (block.audio)
 		{
-			sr.showSRDialog(this); // Simple Reaction Time Experiment
-
-			try
-			{
-				s = sr.SD1Results();
-				bw1.write(s, 0, s.length());
-				bw1.flush();
-				s = sr.SD2Results();
-				bw2.write(s, 0, s.length());
-				bw2.flush();
-			} catch (IOException e)
-			{
-				showError("I/O error writing to output data file");
-				System.exit(0);
-			}
-			showResults(modeName);
-		} else if (mode.equals("PM"))
+			presenter = new AudioPresenter(audio, block.schedule);
+			if (mode.equals("NM"))
+				title = "Standard Audio";
+		} else if (block.visualSearch)
 		{
-			pm.showPMDialog(this); // Physical Matching Experiment
-
-			try
-			{
-				s = pm.SD1Results();
-				bw1.write(s, 0, s.length());
-				bw1.flush();
-				s = pm.SD2Results();
-				bw2.write(s, 0, s.length());
-				bw2.flush();
-			} catch (IOException e)
-			{
-				showError("I/O error writing to output data file");
-				System.exit(0);
-			}
-			showResults(modeName);
-		} else if (mode.equals("NM"))
+			canvas = new StimulusCanvas(new Dimension(300, 300), clock); // GridPresenter sizes it for the grid
+			presenter = new GridPresenter(numberOfItems, block.schedule, canvas);
+			title = "Visual Search";
+		} else
 		{
-			nm.showNMDialog(this); // Name Matching Experiment
+			canvas = new StimulusCanvas(new Dimension(PanelPresenter.SIZE, PanelPresenter.SIZE), clock);
+			presenter = new PanelPresenter(block.choices, block.schedule, canvas);
+		}
 
-			try
-			{
-				s = nm.SD1Results();
-				bw1.write(s, 0, s.length());
-				bw1.flush();
-				s = nm.SD2Results();
-				bw2.write(s, 0, s.length());
-				bw2.flush();
-			} catch (IOException e)
-			{
-				showError("I/O error writing to output data file");
-				System.exit(0);
-			}
-			showResults(modeName);
-		} else if (mode.equals("CM"))
-		{
-			cm.showCMDialog(this); // Class Matching Experiment
+		TrialDialog trials = new TrialDialog(this, title, presenter.component(), c.getFullScreen());
+		if (canvas != null)
+			block.refreshRate = canvas.readRefreshRate(); // here, before the window is up
+		engine = new TrialEngine(block, presenter, mapping, clock, scheduler, trials);
+		input = InputCapture.install(clock, block.dispatchBudget);
+		trials.showTrialDialog(this);
+		block.keyEvents = input.events;
+		block.droppedEvents = input.dropped;
+		block.lateEvents = input.late;
 
-			try
-			{
-				s = cm.SD1Results();
-				bw1.write(s, 0, s.length());
-				bw1.flush();
-				s = cm.SD2Results();
-				bw2.write(s, 0, s.length());
-				bw2.flush();
-			} catch (IOException e)
-			{
-				showError("I/O error writing to output data file");
-				System.exit(0);
-			}
-			showResults(modeName);
-		} else if (mode.equals("VS"))
+		try
 		{
-			vs.showVSDialog(this); // Choice Reaction Time Experiment
-
-			try
-			{
-				s = vs.SD1Results();
-				bw1.write(s, 0, s.length());
-				bw1.flush();
-				s = vs.SD2Results();
-				bw2.write(s, 0, s.length());
-				bw2.flush();
-			} catch (IOException e)
-			{
-				showError("I/O error writing to output data file");
-				System.exit(0);
-			}
-			showResults(modeName);
+			block.finish();
+		} catch (IOException e)
+		{
+			showError("I/O error writing to output data file");
+			System.exit(0);
 		}
+		showResults(modeName);
 		System.exit(0); // probably a dumb way to exit, but it works!
 	} // end of constructor
 
@@ -297,1190 +219,94 @@ class ReactionTimeExpFrame extends JFrame
 	{
 		String s = "Thank you!\n\n";
 		s += String.format("  *** %s ***\n", mode);
-		s += String.format("  Mean RT = %1.1f ms\n", mean(time));
-		s += String.format("  min = %d ms\n", min(time));
-		s += String.format("  max = %d ms\n", max(time));
-		s += String.format("  SD = %1.2f ms\n", sd(time));
-		s += String.format("  Errors = %d", numberOfErrors);
+		s += String.format("  Mean RT = %1.1f ms\n", block.stats.all.mean());
+		s += String.format("  min = %1.1f ms\n", block.stats.all.min());
+		s += String.format("  max = %1.1f ms\n", block.stats.all.max());
+		s += String.format("  SD = %1.2f ms\n", block.stats.all.sd());
+		s += String.format("  Errors = %d", block.numberOfErrors);
 		resultsArea.setText(s);
 		resultsDialog.setVisible(true);
 	}
 
 	Font getRandomFont()
 	{
-		Random r = new Random();
+		SplitMix r = block.random.letters;
 		String name = r.nextBoolean() ? "monospaced" : "sansserif";
 		int style = r.nextBoolean() ? Font.PLAIN : Font.BOLD;
 		int size = r.nextBoolean() ? 18 : 20;
 		return new Font(name, style, size);
 	}
 
-	// calculate the mean of the values in an integer array
-	public double mean(int n[])
-	{
-		double mean = 0.0;
-		for (int j = 0; j < n.length; j++)
-			mean += n[j];
-		return mean / n.length;
-	}
-
-	// calculate the standard deviation of values in an integer array
-	public double sd(int[] n)
-	{
-		double m = mean(n);
-		double t = 0.0;
-		for (int j = 0; j < n.length; j++)
-			t += (m - n[j]) * (m - n[j]);
-		return Math.sqrt(t / (n.length - 1.0));
-	}
-
-	// find the minimum value in an integer array
-	public int min(int[] n)
-	{
-		int min = n[0];
-		for (int j = 1; j < n.length; j++)
-			if (n[j] < min)
-				min = n[j];
-		return min;
-	}
-
-	// find the maximum value in an integer array
-	public int max(int[] n)
-	{
-		int max = n[0];
-		for (int j = 1; j < n.length; j++)
-			if (n[j] > max)
-				max = n[j];
-		return max;
-	}
-
 	// --------------------
 	// Define inner classes
 	// --------------------
 
-	// --------------------------------------
-	// Simple Reaction Time experiment dialog
-	// --------------------------------------
-	private class SRDialog extends JDialog implements ActionListener, KeyListener
-	{
-		private static final long serialVersionUID = 1L;
-
-		Timer t;
-		Random r;
-		JPanel experimentPanel;
-		JPanel leftStimulusPanel;
-	    JPanel rightStimulusPanel;
-		long t1 = 0;
-		boolean begin;
-		int randomNum = randInt(0,1);
-
-		SRDialog(Frame owner)
-		{
-			super(owner, "Simple Reaction Time", true);
-			this.setResizable(false);
-			this.setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
-			this.getContentPane().setLayout(null);
-
-			t = new Timer(2000, this);
-			r = new Random();
-			begin = false;
-			
-			
-			
-			leftStimulusPanel = new JPanel();
-			leftStimulusPanel.setBackground(Color.gray);
-			leftStimulusPanel.setPreferredSize(new Dimension(300, 600));
-			leftStimulusPanel.setMaximumSize(leftStimulusPanel.getPreferredSize());
-			leftStimulusPanel.setBorder(BorderFactory.createLineBorder(Color.gray));
-			
-	        rightStimulusPanel = new JPanel();
-            rightStimulusPanel.setBackground(Color.gray);
-            rightStimulusPanel.setPreferredSize(new Dimension(300, 600));
-            rightStimulusPanel.setMaximumSize(leftStimulusPanel.getPreferredSize());
-            rightStimulusPanel.setBorder(BorderFactory.createLineBorder(Color.DARK_GRAY));
-   
-			experimentPanel = new JPanel( new BorderLayout() );
-			experimentPanel.setLayout(new BoxLayout(experimentPanel, BoxLayout.X_AXIS));
-			experimentPanel.setPreferredSize(new Dimension(600, 600));
-			experimentPanel.setBorder(BorderFactory.createLineBorder(Color.gray));
-			experimentPanel.add(Box.createVerticalGlue());
-			experimentPanel.add(leftStimulusPanel);
-			experimentPanel.add(Box.createVerticalGlue());
-			
-			experimentPanel.add(leftStimulusPanel,BorderLayout.EAST);
-			experimentPanel.add(rightStimulusPanel,BorderLayout.WEST);
-			this.addKeyListener(this);
-
-			this.setContentPane(experimentPanel);
-			this.pack();
-		}
-
-		public int showSRDialog(Frame f)
-		{
-			count = 0;
-			leftStimulusPanel.setBackground(Color.gray);
-	        rightStimulusPanel.setBackground(Color.DARK_GRAY);
-			this.setLocationRelativeTo(f);
-			t.restart();
-			begin = false; // don't think this is needed!?
-			this.setVisible(true);
-			return -1;
-		}
-
-		public void actionPerformed(ActionEvent ae)
-		{
-			if (randomNum == 0){
-    			// System.out.println("Action event");
-    			leftStimulusPanel.setBackground(Color.red);
-    			t1 = System.currentTimeMillis();
-    			begin = true;
-		    }
-		    else if (randomNum == 1){
-		        rightStimulusPanel.setBackground(Color.red);
-		        t1 = System.currentTimeMillis();
-		        begin = true;
-		    }
-		}
-
-		public void keyPressed(KeyEvent ke)
-		{
-		    if (randomNum == 0) {
-    		    if (ke.getKeyCode() == KeyEvent.VK_LEFT ) {
-        			// System.out.println("Key pressed event");
-                    randomNum = randInt(0,1);
-        			if (!begin)
-        			{
-        			    numberOfErrors++;
-        				ke.consume();
-        				return;
-        			}
-        			time[count++] = (int)(System.currentTimeMillis() - t1);
-        			if (count == maxTrials)
-        			{
-        				begin = false;
-        				leftStimulusPanel.setBackground(Color.gray);
-        				this.setVisible(false); // does this cause an immediate return!?
-        			} else
-        			{
-        				t.setInitialDelay(2000 + r.nextInt(3000));
-        				t.restart();
-        				leftStimulusPanel.setBackground(Color.gray);
-        				begin = false;
-        			}
-    		    }
-    		    else if (ke.getKeyCode() == KeyEvent.VK_RIGHT ) {
-    		        numberOfErrors++;
-                    randomNum = randInt(0,1);
-                    if (!begin)
-                    {
-                        numberOfErrors++;
-                        ke.consume();
-                        return;
-                    }
-                    time[count++] = (int)(System.currentTimeMillis() - t1);
-                    if (count == maxTrials)
-                    {
-                        begin = false;
-                        leftStimulusPanel.setBackground(Color.gray);
-                        this.setVisible(false); // does this cause an immediate return!?
-                    } else
-                    {
-                        t.setInitialDelay(2000 + r.nextInt(3000));
-                        t.restart();
-                        leftStimulusPanel.setBackground(Color.gray);
-                        begin = false;
-                    }
-    		    }
-		    }
-		    
-		    else if (randomNum == 1) {
-                if (ke.getKeyCode() == KeyEvent.VK_RIGHT ) {
-                    randomNum = randInt(0,1);
-                    // System.out.println("Key pressed event");
-                    if (!begin)
-                    {
-                        numberOfErrors++;
-                        ke.consume();
-                        return;
-                    }
-                    time[count++] = (int)(System.currentTimeMillis() - t1);
-                    if (count == maxTrials)
-                    {
-                        begin = false;
-                        rightStimulusPanel.setBackground(Color.DARK_GRAY);
-                        this.setVisible(false); // does this cause an immediate return!?
-                    } else
-                    {
-                        t.setInitialDelay(1000 + r.nextInt(1000));
-                        t.restart();
-                        rightStimulusPanel.setBackground(Color.DARK_GRAY);
-                        begin = false;
-                    }
-                }
-                else if (ke.getKeyCode() == KeyEvent.VK_LEFT ) {
-                    numberOfErrors++;
-                    randomNum = randInt(0,1);
-                    if (!begin)
-                    {
-                        numberOfErrors++;
-                        ke.consume();
-                        return;
-                    }
-                    time[count++] = (int)(System.currentTimeMillis() - t1);
-                    if (count == maxTrials)
-                    {
-                        begin = false;
-                        rightStimulusPanel.setBackground(Color.DARK_GRAY);
-                        this.setVisible(false); // does this cause an immediate return!?
-                    } else
-                    {
-                        t.setInitialDelay(2000 + r.nextInt(3000));
-                        t.restart();
-                        rightStimulusPanel.setBackground(Color.DARK_GRAY);
-                        begin = false;
-                    }
-                }
-            }
-		}
-
-
-		public void keyTyped(KeyEvent ke)
-		{
-		}
-
-		public void keyReleased(KeyEvent ke)
-		{
-		}
-
-		public String SD1Results()
-		{
-			String s = "time";
-			for (int i = 0; i < time.length; ++i)
-				s += "," + time[i];
-			s += "\n";
-			return s;
-		}
-
-		public String SD2Results()
-		{
-			return String.format("%s,%s,%s,%f,%d,%d,%f,%d", participantCode, blockCode, mode, mean(time), min(time),
-					max(time), sd(time), numberOfErrors);			
-		}
-
-		public String SD2Header()
-		{
-			return "Participant,Block,Mode,mean,min,max,sd,numberOfErrors\n";
-		}
-	}
-
-	// -----------------------------------
-	// ReversedMapping
-	// -----------------------------------
-	private class PMDialog extends JDialog implements ActionListener, KeyListener
-	{
-		private static final long serialVersionUID = 1L;
-
-		Timer t;
-		Random r;
-		JPanel experimentPanel;
-		JPanel leftStimulusPanel;
-	    JPanel rightStimulusPanel;
-		long t1 = 0;
-		boolean begin;
-		int randomNum = randInt(0,1);
-
-		PMDialog(Frame owner)
-		{
-			super(owner, "Simple Reaction Time", true);
-			this.setResizable(false);
-			this.setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
-			this.getContentPane().setLayout(null);
-
-			t = new Timer(2000, this);
-			r = new Random();
-			begin = false;
-			
-			
-			
-			leftStimulusPanel = new JPanel();
-			leftStimulusPanel.setBackground(Color.gray);
-			leftStimulusPanel.setPreferredSize(new Dimension(300, 600));
-			leftStimulusPanel.setMaximumSize(leftStimulusPanel.getPreferredSize());
-			leftStimulusPanel.setBorder(BorderFactory.createLineBorder(Color.gray));
-			
-	        rightStimulusPanel = new JPanel();
-            rightStimulusPanel.setBackground(Color.gray);
-            rightStimulusPanel.setPreferredSize(new Dimension(300, 600));
-            rightStimulusPanel.setMaximumSize(leftStimulusPanel.getPreferredSize());
-            rightStimulusPanel.setBorder(BorderFactory.createLineBorder(Color.DARK_GRAY));
-   
-			experimentPanel = new JPanel( new BorderLayout() );
-			experimentPanel.setLayout(new BoxLayout(experimentPanel, BoxLayout.X_AXIS));
-			experimentPanel.setPreferredSize(new Dimension(600, 600));
-			experimentPanel.setBorder(BorderFactory.createLineBorder(Color.gray));
-			experimentPanel.add(Box.createVerticalGlue());
-			experimentPanel.add(leftStimulusPanel);
-			experimentPanel.add(Box.createVerticalGlue());
-			
-			experimentPanel.add(leftStimulusPanel,BorderLayout.EAST);
-			experimentPanel.add(rightStimulusPanel,BorderLayout.WEST);
-			this.addKeyListener(this);
-
-			this.setContentPane(experimentPanel);
-			this.pack();
-		}
-
-		public int showPMDialog(Frame f)
-		{
-			count = 0;
-			leftStimulusPanel.setBackground(Color.gray);
-	        rightStimulusPanel.setBackground(Color.DARK_GRAY);
-			this.setLocationRelativeTo(f);
-			t.restart();
-			begin = false; // don't think this is needed!?
-			this.setVisible(true);
-			return -1;
-		}
-
-		public void actionPerformed(ActionEvent ae)
-		{
-			if (randomNum == 0){
-    			// System.out.println("Action event");
-    			leftStimulusPanel.setBackground(Color.red);
-    			t1 = System.currentTimeMillis();
-    			begin = true;
-		    }
-		    else if (randomNum == 1){
-		        rightStimulusPanel.setBackground(Color.red);
-		        t1 = System.currentTimeMillis();
-		        begin = true;
-		    }
-		}
-
-		public void keyPressed(KeyEvent ke)
-		{
-		    if (randomNum == 0) {
-    		    if (ke.getKeyCode() == KeyEvent.VK_RIGHT ) {
-        			// System.out.println("Key pressed event");
-                    randomNum = randInt(0,1);
-        			if (!begin)
-        			{
-        			    numberOfErrors++;
-        				ke.consume();
-        				return;
-        			}
-        			time[count++] = (int)(System.currentTimeMillis() - t1);
-        			if (count == maxTrials)
-        			{
-        				begin = false;
-        				leftStimulusPanel.setBackground(Color.gray);
-        				this.setVisible(false); // does this cause an immediate return!?
-        			} else
-        			{
-        				t.setInitialDelay(2000 + r.nextInt(3000));
-        				t.restart();
-        				leftStimulusPanel.setBackground(Color.gray);
-        				begin = false;
-        			}
-    		    }
-    		    else if (ke.getKeyCode() == KeyEvent.VK_LEFT ) {
-    		        numberOfErrors++;
-                    randomNum = randInt(0,1);
-                    if (!begin)
-                    {
-                        numberOfErrors++;
-                        ke.consume();
-                        return;
-                    }
-                    time[count++] = (int)(System.currentTimeMillis() - t1);
-                    if (count == maxTrials)
-                    {
-                        begin = false;
-                        leftStimulusPanel.setBackground(Color.gray);
-                        this.setVisible(false); // does this cause an immediate return!?
-                    } else
-                    {
-                        t.setInitialDelay(2000 + r.nextInt(3000));
-                        t.restart();
-                        leftStimulusPanel.setBackground(Color.gray);
-                        begin = false;
-                    }
-    		    }
-		    }
-		    
-		    else if (randomNum == 1) {
-                if (ke.getKeyCode() == KeyEvent.VK_LEFT ) {
-                    randomNum = randInt(0,1);
-                    // System.out.println("Key pressed event");
-                    if (!begin)
-                    {
-                        numberOfErrors++;
-                        ke.consume();
-                        return;
-                    }
-                    time[count++] = (int)(System.currentTimeMillis() - t1);
-                    if (count == maxTrials)
-                    {
-                        begin = false;
-                        rightStimulusPanel.setBackground(Color.DARK_GRAY);
-                        this.setVisible(false); // does this cause an immediate return!?
-                    } else
-                    {
-                        t.setInitialDelay(1000 + r.nextInt(1000));
-                        t.restart();
-                        rightStimulusPanel.setBackground(Color.DARK_GRAY);
-                        begin = false;
-                    }
-                }
-                else if (ke.getKeyCode() == KeyEvent.VK_RIGHT ) {
-                    numberOfErrors++;
-                    randomNum = randInt(0,1);
-                    if (!begin)
-                    {
-                        numberOfErrors++;
-                        ke.consume();
-                        return;
-                    }
-                    time[count++] = (int)(System.currentTimeMillis() - t1);
-                    if (count == maxTrials)
-                    {
-                        begin = false;
-                        rightStimulusPanel.setBackground(Color.DARK_GRAY);
-                        this.setVisible(false); // does this cause an immediate return!?
-                    } else
-                    {
-                        t.setInitialDelay(2000 + r.nextInt(3000));
-                        t.restart();
-                        rightStimulusPanel.setBackground(Color.DARK_GRAY);
-                        begin = false;
-                    }
-                }
-            }
-		}
-
-
-		public void keyTyped(KeyEvent ke)
-		{
-		}
-
-		public void keyReleased(KeyEvent ke)
-		{
-		}
-
-		public String SD1Results()
-		{
-			String s = "time";
-			for (int i = 0; i < time.length; ++i)
-				s += "," + time[i];
-			s += "\n";
-			return s;
-		}
-
-		public String SD2Results()
-		{
-			return String.format("%s,%s,%s,%f,%d,%d,%f", participantCode, blockCode, mode, mean(time), min(time),
-					max(time), sd(time));			
-		}
-
-		public String SD2Header()
-		{
-			return "Participant,Block,Mode,mean,min,max,sd\n";
-		}
-	}
-
-	// -------------------------------
-	// Name Matching experiment dialog
-	// -------------------------------
-	private class NMDialog extends JDialog implements ActionListener, KeyListener
-	{
-		private static final long serialVersionUID = 1L;
-
-		Timer t;
-		Random r;
-		JPanel experimentPanel;
-
-
-	    
-		long t1 = 0;
-		boolean begin;
-		int randomNum = randInt(0,1);
-
-		NMDialog(Frame owner)
-		{
-			super(owner, "Standard Audio", true);
-			this.setResizable(false);
-			this.setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
-			this.getContentPane().setLayout(null);
-
-			t = new Timer(2000, this);
-			r = new Random();
-			begin = false;
-			
-			
-			
-
-   
-			experimentPanel = new JPanel( new BorderLayout() );
-			experimentPanel.setLayout(new BoxLayout(experimentPanel, BoxLayout.X_AXIS));
-			experimentPanel.setPreferredSize(new Dimension(600, 600));
-			experimentPanel.setBorder(BorderFactory.createLineBorder(Color.gray));
-			experimentPanel.add(Box.createVerticalGlue());
-			experimentPanel.add(Box.createVerticalGlue());
-			
-			this.addKeyListener(this);
-
-			this.setContentPane(experimentPanel);
-			this.pack();
-		}
-
-		public int showNMDialog(Frame f)
-		{
-			count = 0;
-			this.setLocationRelativeTo(f);
-			t.restart();
-			begin = false; // don't think this is needed!?
-			this.setVisible(true);
-			return -1;
-		}
-
-		public void actionPerformed(ActionEvent ae)
-		{
-			InputStream in;
-			if (randomNum == 0){
-				try {
-					in = new FileInputStream(new File("C:\\Users\\ADMIN\\Desktop\\New Workspace\\4HC3Research\\src\\Left.wav"));
-					AudioStream audios = new AudioStream(in);
-					AudioPlayer.player.start(audios);
-				    Thread.sleep(1000);
-					AudioPlayer.player.stop(audios);
-				}
-				catch(Exception e) {
-					JOptionPane.showMessageDialog(null,e);
-				}
-    			// System.out.println("Action event");
-    			t1 = System.currentTimeMillis();
-    			begin = true;
-		    }
-		    else if (randomNum == 1){
-				try {
-					in = new FileInputStream(new File("C:\\Users\\ADMIN\\Desktop\\New Workspace\\4HC3Research\\src\\Right.wav"));
-					AudioStream audios = new AudioStream(in);
-					AudioPlayer.player.start(audios);
-				    Thread.sleep(1000);
-					AudioPlayer.player.stop(audios);
-				}
-				catch(Exception e) {
-					JOptionPane.showMessageDialog(null,e);
-				}
-		        t1 = System.currentTimeMillis();
-		        begin = true;
-		    }
-		}
-
-		public void keyPressed(KeyEvent ke)
-		{
-		    if (randomNum == 0) {
-    		    if (ke.getKeyCode() == KeyEvent.VK_LEFT ) {
-        			// System.out.println("Key pressed event");
-                    randomNum = randInt(0,1);
-        			if (!begin)
-        			{
-        			    numberOfErrors++;
-        				ke.consume();
-        				return;
-        			}
-        			time[count++] = (int)(System.currentTimeMillis() - t1);
-        			if (count == maxTrials)
-        			{
-        				begin = false;
-        				this.setVisible(false); // does this cause an immediate return!?
-        			} else
-        			{
-        				t.setInitialDelay(2000 + r.nextInt(5000));
-        				t.restart();
-        				begin = false;
-        			}
-    		    }
-    		    else if (ke.getKeyCode() == KeyEvent.VK_RIGHT ) {
-    		        numberOfErrors++;
-                    randomNum = randInt(0,1);
-                    if (!begin)
-                    {
-                        numberOfErrors++;
-                        ke.consume();
-                        return;
-                    }
-                    time[count++] = (int)(System.currentTimeMillis() - t1);
-                    if (count == maxTrials)
-                    {
-                        begin = false;
-                        this.setVisible(false); // does this cause an immediate return!?
-                    } else
-                    {
-                        t.setInitialDelay(2000 + r.nextInt(5000));
-                        t.restart();
-                        begin = false;
-                    }
-    		    }
-		    }
-		    
-		    else if (randomNum == 1) {
-                if (ke.getKeyCode() == KeyEvent.VK_RIGHT ) {
-                    randomNum = randInt(0,1);
-                    // System.out.println("Key pressed event");
-                    if (!begin)
-                    {
-                        numberOfErrors++;
-                        ke.consume();
-                        return;
-                    }
-                    time[count++] = (int)(System.currentTimeMillis() - t1);
-                    if (count == maxTrials)
-                    {
-                        begin = false;
-                        this.setVisible(false); // does this cause an immediate return!?
-                    } else
-                    {
-                        t.setInitialDelay(2000 + r.nextInt(5000));
-                        t.restart();
-                        begin = false;
-                    }
-                }
-                else if (ke.getKeyCode() == KeyEvent.VK_LEFT ) {
-                    numberOfErrors++;
-                    randomNum = randInt(0,1);
-                    if (!begin)
-                    {
-                        numberOfErrors++;
-                        ke.consume();
-                        return;
-                    }
-                    time[count++] = (int)(System.currentTimeMillis() - t1);
-                    if (count == maxTrials)
-                    {
-                        begin = false;
-                        this.setVisible(false); // does this cause an immediate return!?
-                    } else
-                    {
-                        t.setInitialDelay(2000 + r.nextInt(5000));
-                        t.restart();
-                        begin = false;
-                    }
-                }
-            }
-		}
-
-
-		public void keyTyped(KeyEvent ke)
-		{
-		}
-
-		public void keyReleased(KeyEvent ke)
-		{
-		}
-
-		public String SD1Results()
-		{
-			String s = "time";
-			for (int i = 0; i < time.length; ++i)
-				s += "," + time[i];
-			s += "\n";
-			return s;
-		}
-
-		public String SD2Results()
-		{
-			return String.format("%s,%s,%s,%f,%d,%d,%f,%d", participantCode, blockCode, mode, mean(time), min(time),
-					max(time), sd(time), numberOfErrors);			
-		}
-
-		public String SD2Header()
-		{
-			return "Participant,Block,Mode,mean,min,max,sd,numberOfErrors\n";
-		}
-	}
-	// --------------------------------
-	// Class Matching experiment dialog
-	// --------------------------------
-	private class CMDialog extends JDialog implements ActionListener, KeyListener
+	// ---------------------------------------------------------------
+	// Trial dialog: shows the presenter while the engine gets the keys
+	// ---------------------------------------------------------------
+	private class TrialDialog extends JDialog implements TrialEngine.Listener
 	{
 		private static final long serialVersionUID = 1L;
 
-		Timer t;
-		Random r;
-		JPanel experimentPanel;
-		long t1 = 0;
-		boolean begin;
-		int randomNum = randInt(0,1);
+		private final GraphicsDevice device;
+		private final boolean fullScreen; // exclusive full-screen window (page flipping)
+		private SecondaryLoop blockRunning; // full screen: showTrialDialog waits in it
 
-		CMDialog(Frame owner)
+		TrialDialog(Frame owner, String title, JComponent experimentPanel, boolean fullScreenArg)
 		{
-			super(owner, "Simple Reaction Time", true);
+			super(owner, title);
+			device = owner.getGraphicsConfiguration().getDevice();
+			fullScreen = fullScreenArg && device.isFullScreenSupported();
+			// setFullScreenWindow() shows the window while it holds the device; a modal dialog would
+			// block it there for the whole block, before exclusive mode was ever entered
+			this.setModal(!fullScreen);
 			this.setResizable(false);
+			this.setUndecorated(fullScreen);
 			this.setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
-			this.getContentPane().setLayout(null);
-
-			t = new Timer(2000, this);
-			r = new Random();
-			begin = false;
-			
-			experimentPanel = new JPanel( new BorderLayout() );
-			experimentPanel.setLayout(new BoxLayout(experimentPanel, BoxLayout.X_AXIS));
-			experimentPanel.setPreferredSize(new Dimension(600, 600));
-			experimentPanel.setBorder(BorderFactory.createLineBorder(Color.gray));
-			experimentPanel.add(Box.createVerticalGlue());
-			experimentPanel.add(Box.createVerticalGlue());
-			
-			this.addKeyListener(this);
-
 			this.setContentPane(experimentPanel);
-			this.pack();
-		}
-
-		public int showCMDialog(Frame f)
-		{
-			count = 0;
-			this.setLocationRelativeTo(f);
-			t.restart();
-			begin = false; // don't think this is needed!?
-			this.setVisible(true);
-			return -1;
-		}
-
-		public void actionPerformed(ActionEvent ae)
-		{
-			InputStream in;
-			if (randomNum == 0){
-				try {
-					in = new FileInputStream(new File("C:\\Users\\ADMIN\\Desktop\\New Workspace\\4HC3Research\\src\\Left.wav"));
-					AudioStream audios = new AudioStream(in);
-					AudioPlayer.player.start(audios);
-				    Thread.sleep(1000);
-					AudioPlayer.player.stop(audios);
-				}
-				catch(Exception e) {
-					JOptionPane.showMessageDialog(null,e);
-				}
-    			// System.out.println("Action event");
-    			t1 = System.currentTimeMillis();
-    			begin = true;
-		    }
-		    else if (randomNum == 1){
-				try {
-					in = new FileInputStream(new File("C:\\Users\\ADMIN\\Desktop\\New Workspace\\4HC3Research\\src\\Right.wav"));
-					AudioStream audios = new AudioStream(in);
-					AudioPlayer.player.start(audios);
-				    Thread.sleep(1000);
-					AudioPlayer.player.stop(audios);
-				}
-				catch(Exception e) {
-					JOptionPane.showMessageDialog(null,e);
-				}
-		        t1 = System.currentTimeMillis();
-		        begin = true;
-		    }
-		}
-
-		public void keyPressed(KeyEvent ke)
-		{
-		    if (randomNum == 0) {
-    		    if (ke.getKeyCode() == KeyEvent.VK_RIGHT ) {
-        			// System.out.println("Key pressed event");
-                    randomNum = randInt(0,1);
-        			if (!begin)
-        			{
-                        numberOfErrors++;
-        				ke.consume();
-        				return;
-        			}
-        			time[count++] = (int)(System.currentTimeMillis() - t1);
-        			if (count == maxTrials)
-        			{
-        				begin = false;
-        				this.setVisible(false); // does this cause an immediate return!?
-        			} else
-        			{
-        				t.setInitialDelay(2000 + r.nextInt(3000));
-        				t.restart();
-        				begin = false;
-        			}
-    		    }
-    		    else if (ke.getKeyCode() == KeyEvent.VK_LEFT) {
-        			// System.out.println("Key pressed event");
-                    randomNum = randInt(0,1);
-                    numberOfErrors++;
-        			if (!begin)
-        			{
-                        numberOfErrors++;
-        				ke.consume();
-        				return;
-        			}
-        			time[count++] = (int)(System.currentTimeMillis() - t1);
-        			if (count == maxTrials)
-        			{
-        				begin = false;
-        				this.setVisible(false); // does this cause an immediate return!?
-        			} else
-        			{
-        				t.setInitialDelay(2000 + r.nextInt(3000));
-        				t.restart();
-        				begin = false;
-        			}
-    		    }
-		    }
-		    
-		    else if (randomNum == 1) {
-                if (ke.getKeyCode() == KeyEvent.VK_LEFT ) {
-                    randomNum = randInt(0,1);
-                    // System.out.println("Key pressed event");
-                    if (!begin)
-                    {
-                        numberOfErrors++;
-                        ke.consume();
-                        return;
-                    }
-                    time[count++] = (int)(System.currentTimeMillis() - t1);
-                    if (count == maxTrials)
-                    {
-                        begin = false;
-                        this.setVisible(false); // does this cause an immediate return!?
-                    } else
-                    {
-                        t.setInitialDelay(1000 + r.nextInt(1000));
-                        t.restart();
-                        begin = false;
-                    }
-                }
-    		    else if (ke.getKeyCode() == KeyEvent.VK_RIGHT) {
-        			// System.out.println("Key pressed event");
-                    randomNum = randInt(0,1);
-                    numberOfErrors++;
-        			if (!begin)
-        			{
-                        numberOfErrors++;
-        				ke.consume();
-        				return;
-        			}
-        			time[count++] = (int)(System.currentTimeMillis() - t1);
-        			if (count == maxTrials)
-        			{
-        				begin = false;
-        				this.setVisible(false); // does this cause an immediate return!?
-        			} else
-        			{
-        				t.setInitialDelay(2000 + r.nextInt(3000));
-        				t.restart();
-        				begin = false;
-        			}
-    		    }
-            }
-		}
-
-
-		public void keyTyped(KeyEvent ke)
-		{
-		}
-
-		public void keyReleased(KeyEvent ke)
-		{
-		}
-
-		public String SD1Results()
-		{
-			String s = "time";
-			for (int i = 0; i < time.length; ++i)
-				s += "," + time[i];
-			s += "\n";
-			return s;
-		}
-
-		public String SD2Results()
-		{
-			return String.format("%s,%s,%s,%f,%d,%d,%f", participantCode, blockCode, mode, mean(time), min(time),
-					max(time), sd(time));			
-		}
-
-		public String SD2Header()
-		{
-			return "Participant,Block,Mode,mean,min,max,sd\n";
-		}
-	}
-
-	// ------------------------------------
-	// Visual Search Time experiment dialog
-	// ------------------------------------
-	private class VSDialog extends JDialog implements ActionListener, KeyListener
-	{
-		private static final long serialVersionUID = 1L;
-		Timer t;
-		Random r;
-		JPanel experimentPanel;
-		JLabel s1Label;
-		JLabel[] s2Label;
-		JPanel sPanel;
-		long t1 = 0;
-		int numberOfItems;
-		RandomBooleanArray rba;
-
-		VSDialog(Frame owner, int numberOfChoicesArg)
-		{
-			super(owner, "Visual Search", true);
-			numberOfItems = numberOfChoicesArg;
-			this.setResizable(false);
-			this.setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
-
-			t = new Timer(2000, this);
-			r = new Random();
-			rba = new RandomBooleanArray(maxTrials);
-
-			final Font F18 = new Font("sansserif", Font.PLAIN, 18);
-			final Dimension D = new Dimension(30, 30);
-			s1Label = new JLabel(" ", SwingConstants.CENTER);
-			s1Label.setBorder(BorderFactory.createLineBorder(Color.gray));
-			s1Label.setPreferredSize(D);
-			s1Label.setMaximumSize(D);
-			s1Label.setFont(F18);
-
-			s2Label = new JLabel[numberOfItems];
-			JPanel s2Panel = null;
-			if (numberOfItems == 1)
-				s2Panel = new JPanel(new GridLayout(1, 1));
-			else if (numberOfItems == 2)
-				s2Panel = new JPanel(new GridLayout(2, 1));
-			else if (numberOfItems == 4)
-				s2Panel = new JPanel(new GridLayout(2, 2));
-			else if (numberOfItems == 8)
-				s2Panel = new JPanel(new GridLayout(2, 4));
-			else if (numberOfItems == 16)
-				s2Panel = new JPanel(new GridLayout(4, 4));
-			else if (numberOfItems == 32)
-				s2Panel = new JPanel(new GridLayout(4, 8));
-
-			for (int i = 0; i < s2Label.length; ++i)
+			if (fullScreen)
 			{
-				s2Label[i] = new JLabel(" ", SwingConstants.CENTER);
-				s2Label[i].setBorder(BorderFactory.createLineBorder(Color.gray));
-				s2Label[i].setPreferredSize(D);
-				s2Label[i].setMaximumSize(D);
-				s2Label[i].setFont(F18);
-				s2Panel.add(s2Label[i]);
+				experimentPanel.setBackground(Color.black);
+				this.setIgnoreRepaint(true); // the stimulus canvas draws itself
 			}
-
-			sPanel = new JPanel();
-			sPanel.add(s1Label);
-			sPanel.add(s2Panel);
-
-			experimentPanel = new JPanel();
-			experimentPanel.setLayout(new BoxLayout(experimentPanel, BoxLayout.Y_AXIS));
-			experimentPanel.setPreferredSize(new Dimension(300, 300));
-			experimentPanel.setBorder(BorderFactory.createLineBorder(Color.gray));
-			experimentPanel.add(Box.createVerticalGlue()); // kludge spacing
-			experimentPanel.add(Box.createVerticalGlue());
-			experimentPanel.add(sPanel);
-			experimentPanel.add(Box.createVerticalGlue());
-
-			this.addKeyListener(this);
-			this.setContentPane(experimentPanel);
 			this.pack();
 		}
 
-		public int showVSDialog(Frame f)
+		// returns once the block is done
+		public void showTrialDialog(Frame f)
 		{
-			rba.shuffle();
-			count = 0;
-			s1Label.setBackground(Color.gray);
-			for (int i = 0; i < s2Label.length; ++i)
-				s2Label[i].setText("");
 			this.setLocationRelativeTo(f);
-			t.restart(); // !!!
-			s1Label.setText("");
-			for (int i = 0; i < numberOfItems; ++i)
-				s2Label[i].setText("");
-			this.setVisible(true);
-			t.stop();
-			return -1;
-		}
-
-		boolean armed = false;
-		boolean matchMode = false;
-		String c1 = "";
-
-		public void actionPerformed(ActionEvent ae)
-		{
-			if (!armed)
+			// like everything the engine does, starting it is left to the EDT, once the window is up
+			this.addWindowListener(new WindowAdapter()
 			{
-				matchMode = rba.nextBooleanArrayEntry();
-				c1 = Character.toString((char)('A' + r.nextInt(26)));
-				s1Label.setText(c1);
-				t.setInitialDelay(2000 + r.nextInt(3000));
-				t.restart();
-				armed = true;
-			} else
-			{
-				t.stop();
-				// location of match random (but, of course, no-match 50% of time)
-				int location = r.nextInt(numberOfItems);
-				for (int i = 0; i < numberOfItems; ++i)
+				public void windowOpened(WindowEvent e)
 				{
-					// choose second stimulus at random
-					String c2 = Character.toString((char)('A' + r.nextInt(26)));
-					// ensure second stimulus != first stimulus
-					while (c2.equals(c1))
-						c2 = Character.toString((char)('A' + r.nextInt(26)));
-					if (matchMode && location == i)
-						s2Label[i].setText(c1);
-					else
-						s2Label[i].setText(c2);
+					input.route(engine); // whichever window has the focus
+					engine.start();
 				}
-				t1 = System.currentTimeMillis();
-			}
-		}
-
-		public void keyPressed(KeyEvent ke)
-		{
-			time[count] = (int)(System.currentTimeMillis() - t1);
-			key[count] = Character.toLowerCase(ke.getKeyChar());
-			match[count] = matchMode ? 1 : 0;
-			error[count] = matchMode && (key[count] != 'j' && key[count] != 'f') || !matchMode
-					&& (key[count] == 'j' || key[count] == 'f') ? 1 : 0;
-			++count;
-			if (count == maxTrials)
+			});
+			if (fullScreen)
 			{
+				blockRunning = Toolkit.getDefaultToolkit().getSystemEventQueue().createSecondaryLoop();
+				device.setFullScreenWindow(this); // shows the (non-modal) dialog and returns
+				blockRunning.enter(); // events go on being dispatched until blockDone()
+				device.setFullScreenWindow(null);
 				this.setVisible(false);
-				rba = new RandomBooleanArray(maxTrials);
-			}
-
-			t.setInitialDelay(2000);
-			t.restart();
-			s1Label.setText("");
-			for (int i = 0; i < numberOfItems; ++i)
-				s2Label[i].setText("");
-			armed = false;
-		}
-
-		public void keyTyped(KeyEvent ke)
-		{
-		}
-
-		public void keyReleased(KeyEvent ke)
-		{
-		}
-
-		public String SD1Results()
-		{
-			String s = "";
-			s += "times,";
-			for (int i = 0; i < time.length; ++i)
-				s += time[i] + ",";
-			s += "\n";
-			s += "keys,";
-			for (int i = 0; i < time.length; ++i)
-				s += key[i] + ",";
-			s += "\n";
-			s += "match,";
-			for (int i = 0; i < time.length; ++i)
-				s += match[i] + ",";
-			s += "\n";
-			s += "errors,";
-			for (int i = 0; i < time.length; ++i)
-				s += error[i] + ",";
-			s += "\n";
-			return s;
-		}
-
-		public String SD2Results()
-		{
-			double totalTime = 0.0;
-			int totalErrors = 0;
-			double totalMatchTime = 0.0;
-			int nMatch = 0;
-			int nMatchErrors = 0;
-			double totalNoMatchTime = 0.0;
-			int nNoMatch = 0;
-			int nNoMatchErrors = 0;
-
-			for (int i = 0; i < time.length; ++i)
-			{
-				totalTime += time[i];
-				totalErrors += error[i];
-				if (match[i] == 1)
-				{
-					totalMatchTime += time[i];
-					++nMatch;
-					nMatchErrors += error[i];
-				} else
-				{
-					totalNoMatchTime += time[i];
-					++nNoMatch;
-					nNoMatchErrors += error[i];
-				}
-			}
-
-			return participantCode + "," + blockCode + "," + mode + "," + numberOfItems + "," + totalTime + ","
-					+ totalErrors + "," + totalMatchTime + "," + nMatch + "," + nMatchErrors + "," + totalNoMatchTime
-					+ "," + nNoMatch + "," + nNoMatchErrors;
-		}
-
-		public String SD2Header()
-		{
-			return "Participant,Block,Mode,Number_of_Items," + "total_time,total_errors,"
-					+ "total_match_time,n_match,n_match_errors," + "total_no-match_time,n_no-match,n_no-match_errors\n";
-		}
-	}
-
-	private class RandomBooleanArray
-	{
-		int size;
-		boolean[] booleanArray;
-		int nextCounter;
-
-		RandomBooleanArray(int sizeArg)
-		{
-			size = sizeArg;
-			booleanArray = new boolean[size];
-
-			// create boolean array; 50% = false, 50% = true
-			for (int i = 0; i < size; ++i)
-				booleanArray[i] = i < size / 2 ? false : true;
-			shuffle();
-			nextCounter = 0;
-		}
-
-		// shuffle entries in array (still 50% false, 50% true)
-		void shuffle()
-		{
-			Random r = new Random();
-			for (int i = 0; i < size / 2; ++i) // size must be even!
-			{
-				if (r.nextBoolean())
-				{
-					boolean temp = booleanArray[i];
-					booleanArray[i] = booleanArray[i + size / 2];
-					booleanArray[i + size / 2] = temp;
-				}
-			}
-			return;
+			} else
+				this.setVisible(true);
 		}
 
-		boolean nextBooleanArrayEntry()
+		// on the EDT, from the engine
+		public void blockDone()
 		{
-			return booleanArray[nextCounter++];
+			engine.stop();
+			input.route(null);
+			if (fullScreen)
+				blockRunning.exit();
+			else
+				this.setVisible(false);
 		}
 	}
-	
-	public static int randInt(int min, int max) {
-
-	    // NOTE: Usually this should be a field rather than a method
-	    // variable so that it is not re-seeded every call.
-	    Random rand = new Random();
-
-	    // nextInt is normally exclusive of the top value,
-	    // so add 1 to make it inclusive
-	    int randomNum = rand.nextInt((max - min) + 1) + min;
-
-	    return randomNum;
-	}
-	
 }
 
 // ---------
@@ -1498,6 +324,11 @@ class ReactionTimeExperimentSetup extends JDialog implements ActionListener
 	JComboBox participantCode;
 	JComboBox blockCode;
 	JComboBox numberOfTrials;
+	JComboBox<String> dispatchBudget;
+	JComboBox<String> numberOfChoices;
+	JTextField responseKeys;
+	JTextField scheduleFile;
+	JCheckBox fullScreen;
 
 	JRadioButton srButton;
 	JRadioButton pmButton;
@@ -1511,6 +342,9 @@ class ReactionTimeExperimentSetup extends JDialog implements ActionListener
 	JRadioButton vs8Button;
 	JRadioButton vs16Button;
 	JRadioButton vs32Button;
+	JRadioButton vs64Button;
+	JRadioButton vs128Button;
+	JRadioButton vs256Button;
 
 	JButton okButton;
 	JButton resetButton;
@@ -1523,6 +357,7 @@ class ReactionTimeExperimentSetup extends JDialog implements ActionListener
 																									// numbers
 																									// =
 																									// indices
+	final String[] CHOICES = { "2", "4", "8" };
 
 	ReactionTimeExperimentSetup(Frame owner, ReactionTimeExperimentConfiguration cArg)
 	{
@@ -1549,6 +384,25 @@ class ReactionTimeExperimentSetup extends JDialog implements ActionListener
 		numberOfTrials.setFont(F16);
 		numberOfTrials.addActionListener(this);
 
+		dispatchBudget = new JComboBox<String>(NUMBERS);
+		dispatchBudget.setSelectedIndex(10);
+		dispatchBudget.setFont(F16);
+		dispatchBudget.addActionListener(this);
+
+		numberOfChoices = new JComboBox<String>(CHOICES);
+		numberOfChoices.setFont(F16);
+		numberOfChoices.addActionListener(this);
+
+		responseKeys = new JTextField(c.getResponseKeys());
+		responseKeys.setFont(F16);
+
+		scheduleFile = new JTextField(c.getScheduleFile());
+		scheduleFile.setFont(F16);
+
+		fullScreen = new JCheckBox("", c.getFullScreen());
+		fullScreen.setFont(F16);
+		fullScreen.addActionListener(this);
+
 		srButton = new JRadioButton("Simple Reaction");
 		pmButton = new JRadioButton("Physical Matching");
 		nmButton = new JRadioButton("Name Matching");
@@ -1567,6 +421,9 @@ class ReactionTimeExperimentSetup extends JDialog implements ActionListener
 		vs8Button = new JRadioButton("8");
 		vs16Button = new JRadioButton("16");
 		vs32Button = new JRadioButton("32");
+		vs64Button = new JRadioButton("64");
+		vs128Button = new JRadioButton("128");
+		vs256Button = new JRadioButton("256");
 
 		srButton.setFont(F16);
 		nmButton.setFont(F16);
@@ -1580,6 +437,9 @@ class ReactionTimeExperimentSetup extends JDialog implements ActionListener
 		vs8Button.setFont(F16);
 		vs16Button.setFont(F16);
 		vs32Button.setFont(F16);
+		vs64Button.setFont(F16);
+		vs128Button.setFont(F16);
+		vs256Button.setFont(F16);
 		disableNumbers();
 
 		ButtonGroup bg1 = new ButtonGroup();
@@ -1597,6 +457,9 @@ class ReactionTimeExperimentSetup extends JDialog implements ActionListener
 		bg2.add(vs8Button);
 		bg2.add(vs16Button);
 		bg2.add(vs32Button);
+		bg2.add(vs64Button);
+		bg2.add(vs128Button);
+		bg2.add(vs256Button);
 		vs1Button.setSelected(true); // default
 
 		JPanel rightButtonPanel = new JPanel();
@@ -1623,6 +486,9 @@ class ReactionTimeExperimentSetup extends JDialog implements ActionListener
 		itemsButtonPanel.add(vs8Button);
 		itemsButtonPanel.add(vs16Button);
 		itemsButtonPanel.add(vs32Button);
+		itemsButtonPanel.add(vs64Button);
+		itemsButtonPanel.add(vs128Button);
+		itemsButtonPanel.add(vs256Button);
 
 		srButton.addActionListener(this);
 		pmButton.addActionListener(this);
@@ -1635,6 +501,9 @@ class ReactionTimeExperimentSetup extends JDialog implements ActionListener
 		vs8Button.addActionListener(this);
 		vs16Button.addActionListener(this);
 		vs32Button.addActionListener(this);
+		vs64Button.addActionListener(this);
+		vs128Button.addActionListener(this);
+		vs256Button.addActionListener(this);
 
 		JPanel modePanel = new JPanel();
 		modePanel.setLayout(new BoxLayout(modePanel, BoxLayout.Y_AXIS));
@@ -1672,12 +541,32 @@ class ReactionTimeExperimentSetup extends JDialog implements ActionListener
 		JLabel l6a = new JLabel("Number of trials ", SwingConstants.RIGHT);
 		l6a.setFont(F16);
 		labelPanel.add(l6a);
+		JLabel l6b = new JLabel("Dispatch budget (ms) ", SwingConstants.RIGHT);
+		l6b.setFont(F16);
+		labelPanel.add(l6b);
+		JLabel l6c = new JLabel("Number of choices ", SwingConstants.RIGHT);
+		l6c.setFont(F16);
+		labelPanel.add(l6c);
+		JLabel l6d = new JLabel("Response keys ", SwingConstants.RIGHT);
+		l6d.setFont(F16);
+		labelPanel.add(l6d);
+		JLabel l6e = new JLabel("Trial schedule (.sched) ", SwingConstants.RIGHT);
+		l6e.setFont(F16);
+		labelPanel.add(l6e);
+		JLabel l6f = new JLabel("Full screen ", SwingConstants.RIGHT);
+		l6f.setFont(F16);
+		labelPanel.add(l6f);
 
 		JPanel paramPanel = new JPanel();
 		paramPanel.setLayout(new GridLayout(0, 1, 0, 10));
 		paramPanel.add(participantCode);
 		paramPanel.add(blockCode);
 		paramPanel.add(numberOfTrials);
+		paramPanel.add(dispatchBudget);
+		paramPanel.add(numberOfChoices);
+		paramPanel.add(responseKeys);
+		paramPanel.add(scheduleFile);
+		paramPanel.add(fullScreen);
 
 		JPanel centerPanel = new JPanel();
 		centerPanel.setLayout(new BorderLayout());
@@ -1716,6 +605,9 @@ class ReactionTimeExperimentSetup extends JDialog implements ActionListener
 		vs8Button.setEnabled(true);
 		vs16Button.setEnabled(true);
 		vs32Button.setEnabled(true);
+		vs64Button.setEnabled(true);
+		vs128Button.setEnabled(true);
+		vs256Button.setEnabled(true);
 	}
 
 	void disableNumbers()
@@ -1726,6 +618,9 @@ class ReactionTimeExperimentSetup extends JDialog implements ActionListener
 		vs8Button.setEnabled(false);
 		vs16Button.setEnabled(false);
 		vs32Button.setEnabled(false);
+		vs64Button.setEnabled(false);
+		vs128Button.setEnabled(false);
+		vs256Button.setEnabled(false);
 	}
 
 	public void actionPerformed(ActionEvent ae)
@@ -1736,7 +631,11 @@ class ReactionTimeExperimentSetup extends JDialog implements ActionListener
 		else if (source == resetButton)
 			setDefaults();
 		else if (source == okButton)
+		{
+			c.setResponseKeys(responseKeys.getText().trim());
+			c.setScheduleFile(scheduleFile.getText().trim());
 			this.setVisible(false);
+		}
 
 		else if (source == participantCode)
 			c.setParticipantCode(participantCode.getSelectedIndex());
@@ -1744,6 +643,15 @@ class ReactionTimeExperimentSetup extends JDialog implements ActionListener
 			c.setBlockCode(blockCode.getSelectedIndex());
 		else if (source == numberOfTrials)
 			c.setNumberOfTrials(numberOfTrials.getSelectedIndex());
+		else if (source == dispatchBudget)
+			c.setDispatchBudget(dispatchBudget.getSelectedIndex());
+		else if (source == fullScreen)
+			c.setFullScreen(fullScreen.isSelected());
+		else if (source == numberOfChoices)
+		{
+			c.setNumberOfChoices(Integer.parseInt((String)numberOfChoices.getSelectedItem()));
+			responseKeys.setText(ReactionTimeExperimentConfiguration.defaultResponseKeys(c.getNumberOfChoices()));
+		}
 
 		else if (source == srButton || source == pmButton || source == nmButton || source == cmButton
 				|| source == vsButton)
@@ -1755,10 +663,18 @@ class ReactionTimeExperimentSetup extends JDialog implements ActionListener
 				enableNumbers();
 			else
 				disableNumbers();
+
+			// only the visual panel modes go beyond two choices
+			boolean panels = source == srButton || source == pmButton;
+			if (!panels)
+				numberOfChoices.setSelectedIndex(0);
+			numberOfChoices.setEnabled(panels);
+			responseKeys.setEnabled(source != vsButton);
 		}
 
 		else if (source == vs1Button || source == vs2Button || source == vs4Button || source == vs8Button
-				|| source == vs16Button || source == vs32Button)
+				|| source == vs16Button || source == vs32Button || source == vs64Button || source == vs128Button
+				|| source == vs256Button)
 		{
 			c.setNumberOfItems(Integer.parseInt(((JRadioButton)source).getText()));
 		}
@@ -1770,7 +686,7 @@ class ReactionTimeExperimentSetup extends JDialog implements ActionListener
 		String description = "";
 		if (mode.equals("SR"))
 		{
-			description = "Press any key after the box turns red.";
+			description = "Press the response key of the panel that turns red (keys left to right).";
 		} else if (mode.equals("PM"))
 		{
 			description = "Press F or J if the word pairs match. " + "Press D or K if they do not match.";
@@ -1797,6 +713,15 @@ class ReactionTimeExperimentSetup extends JDialog implements ActionListener
 		c.setNumberOfTrials(10);
 		c.setMode("SR");
 		c.setNumberOfItems(1);
+		c.setDispatchBudget(10);
+		c.setNumberOfChoices(2);
+		c.setResponseKeys(ReactionTimeExperimentConfiguration.defaultResponseKeys(2));
+		numberOfChoices.setSelectedIndex(0);
+		responseKeys.setText(c.getResponseKeys());
+		c.setScheduleFile("");
+		scheduleFile.setText("");
+		c.setFullScreen(true);
+		fullScreen.setSelected(true);
 	}
 
 	public boolean showLetterGuessingExperimentSetup(Frame f)
@@ -1805,99 +730,4 @@ class ReactionTimeExperimentSetup extends JDialog implements ActionListener
 		this.setVisible(true);
 		return true;
 	}
-}
-
-// -------------------------
-// C O N F I G U R A T I O N
-// -------------------------
-
-class ReactionTimeExperimentConfiguration
-{
-	int participantCode;
-	int blockCode;
-	int numberOfTrials;
-	String mode;
-	int numberOfItems;
-
-	ReactionTimeExperimentConfiguration()
-	{
-		participantCode = 0;
-		blockCode = 0;
-		numberOfTrials = 10;
-		mode = "SR";
-		numberOfItems = 1;
-	}
-
-	public void setParticipantCode(int participantCodeArg)
-	{
-		participantCode = participantCodeArg;
-	}
-
-	public void setBlockCode(int blockCodeArg)
-	{
-		blockCode = blockCodeArg;
-	}
-
-	public void setNumberOfTrials(int numberOfTrialsArg)
-	{
-		numberOfTrials = numberOfTrialsArg;
-	}
-
-	public void setMode(String modeArg)
-	{
-		mode = modeArg;
-	}
-
-	public void setNumberOfItems(int numberOfItemsArg)
-	{
-		numberOfItems = numberOfItemsArg;
-	}
-
-	public int getParticipantCode()
-	{
-		return participantCode;
-	}
-
-	public int getBlockCode()
-	{
-		return blockCode;
-	}
-
-	public int getNumberOfTrials()
-	{
-		return numberOfTrials;
-	}
-
-	public String getMode()
-	{
-		return mode;
-	}
-
-	public int getNumberOfItems()
-	{
-		return numberOfItems;
-	}
-
-	public String getModeName()
-	{
-		if (mode.equals("SR"))
-			return "Normal Visual";
-		else if (mode.equals("PM"))
-			return "Reversed Visual";
-		else if (mode.equals("NM"))
-			return "Normal Audio";
-		else if (mode.equals("CM"))
-			return "Reversed Audio";
-		else
-			return "Visual Search";
-	}
-
-	@Override
-	public String toString()
-	{
-		return "ReactionTimeExperiment Configuration\n" + "====================================\n"
-				+ "Participant code = " + participantCode + "\n" + "Block code = " + blockCode + "\n"
-				+ "Number of trials = " + numberOfTrials + "\n" + "Mode = " + mode + "\n" + "Number of items = "
-				+ numberOfItems + "\n";
-	}
 }
\ No newline at end of file
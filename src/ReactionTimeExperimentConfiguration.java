@@ -0,0 +1,168 @@
+// -------------------------
+// C O N F I G U R A T I O N
+// -------------------------
+
+class ReactionTimeExperimentConfiguration
+{
+	int participantCode;
+	int blockCode;
+	int numberOfTrials;
+	String mode;
+	int numberOfItems;
+	int dispatchBudget;
+	int numberOfChoices;
+	String responseKeys; // key names, one per stimulus (see KeyTableMapping.parseKeys)
+	String scheduleFile; // trials to replay (see TrialSchedule); empty: generate from the seed
+	boolean fullScreen; // visual stimuli in an exclusive full-screen window (see StimulusCanvas)
+
+	ReactionTimeExperimentConfiguration()
+	{
+		participantCode = 0;
+		blockCode = 0;
+		numberOfTrials = 10;
+		mode = "SR";
+		numberOfItems = 1;
+		dispatchBudget = 10;
+		numberOfChoices = 2;
+		responseKeys = defaultResponseKeys(2);
+		scheduleFile = "";
+		fullScreen = true;
+	}
+
+	// left to right, one key per stimulus panel
+	static String defaultResponseKeys(int choices)
+	{
+		if (choices == 8)
+			return "A S D F J K L SEMICOLON";
+		else if (choices == 4)
+			return "D F J K";
+		else
+			return "LEFT RIGHT";
+	}
+
+	public void setParticipantCode(int participantCodeArg)
+	{
+		participantCode = participantCodeArg;
+	}
+
+	public void setBlockCode(int blockCodeArg)
+	{
+		blockCode = blockCodeArg;
+	}
+
+	public void setNumberOfTrials(int numberOfTrialsArg)
+	{
+		numberOfTrials = numberOfTrialsArg;
+	}
+
+	public void setMode(String modeArg)
+	{
+		mode = modeArg;
+	}
+
+	public void setNumberOfItems(int numberOfItemsArg)
+	{
+		numberOfItems = numberOfItemsArg;
+	}
+
+	public void setDispatchBudget(int dispatchBudgetArg)
+	{
+		dispatchBudget = dispatchBudgetArg;
+	}
+
+	public void setNumberOfChoices(int numberOfChoicesArg)
+	{
+		numberOfChoices = numberOfChoicesArg;
+	}
+
+	public void setResponseKeys(String responseKeysArg)
+	{
+		responseKeys = responseKeysArg;
+	}
+
+	public void setScheduleFile(String scheduleFileArg)
+	{
+		scheduleFile = scheduleFileArg;
+	}
+
+	public void setFullScreen(boolean fullScreenArg)
+	{
+		fullScreen = fullScreenArg;
+	}
+
+	public int getParticipantCode()
+	{
+		return participantCode;
+	}
+
+	public int getBlockCode()
+	{
+		return blockCode;
+	}
+
+	public int getNumberOfTrials()
+	{
+		return numberOfTrials;
+	}
+
+	public String getMode()
+	{
+		return mode;
+	}
+
+	public int getNumberOfItems()
+	{
+		return numberOfItems;
+	}
+
+	public int getDispatchBudget()
+	{
+		return dispatchBudget;
+	}
+
+	public int getNumberOfChoices()
+	{
+		return numberOfChoices;
+	}
+
+	public String getResponseKeys()
+	{
+		return responseKeys;
+	}
+
+	public String getScheduleFile()
+	{
+		return scheduleFile;
+	}
+
+	public boolean getFullScreen()
+	{
+		return fullScreen;
+	}
+
+	public String getModeName()
+	{
+		if (mode.equals("SR"))
+			return "Normal Visual";
+		else if (mode.equals("PM"))
+			return "Reversed Visual";
+		else if (mode.equals("NM"))
+			return "Normal Audio";
+		else if (mode.equals("CM"))
+			return "Reversed Audio";
+		else
+			return "Visual Search";
+	}
+
+	@Override
+	public String toString()
+	{
+		return "ReactionTimeExperiment Configuration\n" + "====================================\n"
+				+ "Participant code = " + participantCode + "\n" + "Block code = " + blockCode + "\n"
+				+ "Number of trials = " + numberOfTrials + "\n" + "Mode = " + mode + "\n" + "Number of items = "
+				+ numberOfItems + "\n" + "Dispatch budget = " + dispatchBudget + " ms\n" + "Number of choices = "
+				+ numberOfChoices + "\n" + "Response keys = " + responseKeys + "\n"
+				+ (scheduleFile.length() > 0 ? "Trial schedule = " + scheduleFile + "\n" : "") + "Full screen = "
+				+ fullScreen + "\n";
+	}
+}
\ No newline at end of file
@@ -0,0 +1,16 @@
+// -----------------------------------------------------------------
+// ResponseMapping - which key is the correct response to a stimulus
+// -----------------------------------------------------------------
+
+/**
+ * Classifies a key press as the correct response to the current stimulus, a wrong response, or
+ * not a response at all. Implementations must not allocate: they are called on every key press.
+ */
+interface ResponseMapping
+{
+	static final int IGNORE = 0;
+	static final int CORRECT = 1;
+	static final int WRONG = 2;
+
+	int classify(int stimulus, int keyCode);
+}
@@ -0,0 +1,80 @@
+// -----------------------------------------------------------------
+// RunningStats - single-pass summary statistics for reaction times
+// -----------------------------------------------------------------
+
+/**
+ * Count, mean, variance, minimum, and maximum of a stream of values, updated in O(1) per value.
+ * <p>
+ * The mean and variance use Welford's update, which stays numerically stable for long blocks
+ * (no sum of squares to cancel). Summaries are available at any point during a block, and the
+ * end-of-block output needs no further pass over the data.
+ */
+class RunningStats
+{
+	private int n;
+	private double mean;
+	private double m2; // sum of squared deviations from the mean
+	private double min = Double.NaN;
+	private double max = Double.NaN;
+
+	void add(double x)
+	{
+		++n;
+		double delta = x - mean;
+		mean += delta / n;
+		m2 += delta * (x - mean);
+		if (n == 1)
+		{
+			min = x;
+			max = x;
+		} else if (x < min)
+			min = x;
+		else if (x > max)
+			max = x;
+	}
+
+	void clear()
+	{
+		n = 0;
+		mean = 0.0;
+		m2 = 0.0;
+		min = Double.NaN;
+		max = Double.NaN;
+	}
+
+	int count()
+	{
+		return n;
+	}
+
+	double mean()
+	{
+		return n == 0 ? Double.NaN : mean;
+	}
+
+	double sum()
+	{
+		return mean * n;
+	}
+
+	// sample variance (n - 1); 0 until there are two values
+	double variance()
+	{
+		return n < 2 ? 0.0 : m2 / (n - 1);
+	}
+
+	double sd()
+	{
+		return Math.sqrt(variance());
+	}
+
+	double min()
+	{
+		return min;
+	}
+
+	double max()
+	{
+		return max;
+	}
+}
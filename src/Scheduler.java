@@ -0,0 +1,22 @@
+// -----------------------------------------------------------------
+// Scheduler - runs trial events at deadlines
+// -----------------------------------------------------------------
+
+/**
+ * Where the {@link TrialEngine} sends its timed events. {@link TrialScheduler} runs them in real
+ * time for a participant; a simulation can run them as fast as it likes.
+ * <p>
+ * Only one task is pending at a time; scheduling again replaces it.
+ */
+interface Scheduler
+{
+	interface Task
+	{
+		// called once the deadline (ExperimentClock reading) has passed
+		void onsetDue(long deadline);
+	}
+
+	void schedule(long deadline, Task task);
+
+	void cancel();
+}
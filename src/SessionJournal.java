@@ -0,0 +1,346 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+// -----------------------------------------------------------------
+// SessionJournal - crash-safe record of a block, used for resuming
+// -----------------------------------------------------------------
+
+/**
+ * Append-only binary journal of a block of trials, kept next to the .sd1/.sd2 files with the
+ * extension <code>.rtj</code>.
+ * <p>
+ * The journal starts with a header record (configuration and random seed), gets one record per
+ * completed trial, and ends with an end record once the block's output files are complete. Each
+ * record is framed as
+ *
+ * <pre>
+ *     int length | byte type | payload | int CRC32(type + payload)
+ * </pre>
+ *
+ * so a record torn by a crash is detected and everything before it can still be trusted. A
+ * journal without an end record belongs to an interrupted block; {@link #findInterrupted(File)}
+ * locates one and {@link Recovered#restore(ExperimentBlock)} puts its trials back so the
+ * block can carry on from the last good trial with the same randomization state.
+ * <p>
+ * Trial records are appended by the .sd1 writer thread, never by the response handler.
+ */
+class SessionJournal
+{
+	static final String SUFFIX = ".rtj";
+
+	static final byte HEADER = 'H';
+	static final byte TRIAL = 'T';
+	static final byte END = 'E';
+
+	// index, time, dispatch, onset error, output latency, late, key, match, error, side, errors,
+	// dropped frames, prepare time, onset path
+	static final int TRIAL_PAYLOAD = 4 + 8 + 8 + 8 + 8 + 4 + 2 + 4 + 4 + 4 + 4 + 4 + 8 + 8;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final ExperimentBlock f;
+	private final ByteBuffer buf = ByteBuffer.allocate(2048); // the header holds a file name
+	private final CRC32 crc = new CRC32();
+	private int trials; // number of trial records in the journal
+
+	// start a journal for a new block, or continue a recovered one
+	SessionJournal(String fileName, ExperimentBlock fArg, ReactionTimeExperimentConfiguration c,
+			Recovered rec) throws IOException
+	{
+		f = fArg;
+		file = new RandomAccessFile(fileName, "rw");
+		channel = file.getChannel();
+		try
+		{
+			if (rec == null)
+			{
+				channel.truncate(0);
+				begin(HEADER);
+				buf.putInt(c.getParticipantCode());
+				buf.putInt(c.getBlockCode());
+				putString("mode", c.getMode());
+				buf.putInt(c.getNumberOfItems());
+				buf.putInt(c.getNumberOfTrials());
+				buf.putInt(c.getDispatchBudget());
+				buf.putLong(f.seed);
+				buf.putInt(c.getNumberOfChoices());
+				putString("response keys", c.getResponseKeys());
+				putString("schedule file name", c.getScheduleFile());
+				end();
+				channel.force(false);
+			} else
+			{
+				channel.truncate(rec.validLength); // drop a torn record, if any
+				channel.position(rec.validLength);
+				trials = rec.trials;
+			}
+		} catch (IOException e)
+		{
+			file.close();
+			throw e;
+		}
+	}
+
+	// append trial i, unless it is already in the journal (e.g., recovered)
+	void trial(int i) throws IOException
+	{
+		if (i != trials)
+			return;
+		begin(TRIAL);
+		buf.putInt(i);
+		buf.putDouble(f.time[i]);
+		buf.putDouble(f.dispatch[i]);
+		buf.putDouble(f.onsetError[i]);
+		buf.putDouble(f.outputLatency[i]);
+		buf.putInt(f.late[i]);
+		buf.putChar(f.key[i]);
+		buf.putInt(f.match[i]);
+		buf.putInt(f.error[i]);
+		buf.putInt(f.side[i]);
+		buf.putInt(f.errorCount[i]);
+		buf.putInt(f.droppedFrames[i]);
+		buf.putDouble(f.prepareTime[i]);
+		buf.putDouble(f.onsetPath[i]);
+		end();
+		++trials;
+	}
+
+	// the block's output files are complete; nothing left to resume
+	void finish() throws IOException
+	{
+		begin(END);
+		end();
+		channel.force(false);
+		file.close();
+	}
+
+	private void begin(byte type)
+	{
+		buf.clear();
+		buf.putInt(0); // length, filled in by end()
+		buf.put(type);
+	}
+
+	private void end() throws IOException
+	{
+		int length = buf.position() - 4;
+		buf.putInt(0, length);
+		crc.reset();
+		crc.update(buf.array(), 4, length);
+		buf.putInt((int)crc.getValue());
+		buf.flip();
+		while (buf.hasRemaining())
+			channel.write(buf);
+	}
+
+	// a header string; IOException if it doesn't fit in the record (with room for the checksum)
+	private void putString(String what, String s) throws IOException
+	{
+		if (2 + 2L * s.length() + 4 > buf.remaining() || s.length() > Short.MAX_VALUE)
+			throw new IOException("The " + what + " is too long for the session journal (" + s.length()
+					+ " characters)");
+		buf.putShort((short)s.length());
+		for (int i = 0; i < s.length(); ++i)
+			buf.putChar(s.charAt(i));
+	}
+
+	private static String getString(ByteBuffer b)
+	{
+		char[] c = new char[b.getShort()];
+		for (int i = 0; i < c.length; ++i)
+			c[i] = b.getChar();
+		return new String(c);
+	}
+
+	// ---------
+	// Recovery
+	// ---------
+
+	// the most recently modified interrupted journal in dir, or null if there is none
+	static Recovered findInterrupted(File dir)
+	{
+		File[] files = dir.listFiles();
+		Recovered best = null;
+		long bestModified = 0;
+		if (files == null)
+			return null;
+		for (int i = 0; i < files.length; ++i)
+		{
+			if (!files[i].getName().endsWith(SUFFIX) || files[i].lastModified() < bestModified)
+				continue;
+			Recovered rec = recover(files[i]);
+			if (rec != null && !rec.finished && rec.trials > 0 && rec.trials < rec.config.getNumberOfTrials())
+			{
+				best = rec;
+				bestModified = files[i].lastModified();
+			}
+		}
+		return best;
+	}
+
+	// read every good record of a journal; null if even the header is unreadable
+	static Recovered recover(File journal)
+	{
+		byte[] data;
+		try
+		{
+			data = new byte[(int)journal.length()];
+			DataInputStream in = new DataInputStream(new FileInputStream(journal));
+			try
+			{
+				in.readFully(data);
+			} finally
+			{
+				in.close();
+			}
+		} catch (IOException e)
+		{
+			return null;
+		}
+
+		ByteBuffer b = ByteBuffer.wrap(data);
+		CRC32 crc = new CRC32();
+		Recovered rec = null;
+		while (b.remaining() >= 4)
+		{
+			int start = b.position();
+			int length = b.getInt();
+			if (length < 1 || length > b.remaining() - 4)
+				break; // torn record
+			crc.reset();
+			crc.update(data, b.position(), length);
+			if (b.getInt(b.position() + length) != (int)crc.getValue())
+				break; // corrupt record
+			ByteBuffer r = ByteBuffer.wrap(data, b.position(), length).slice();
+			try
+			{
+				byte type = r.get();
+				if (rec == null)
+				{
+					if (type != HEADER)
+						return null;
+					rec = new Recovered(journal, r);
+				} else if (type == TRIAL && length == 1 + TRIAL_PAYLOAD
+						&& r.getInt() == rec.trials && rec.trials < rec.config.getNumberOfTrials())
+					rec.add(r);
+				else if (type == END)
+					rec.finished = true;
+				else
+					break;
+			} catch (RuntimeException e)
+			{
+				// a record that passed its check but doesn't decode: the good part ends here
+				if (rec == null)
+					return null;
+				break;
+			}
+			b.position(start + 4 + length + 4);
+			rec.validLength = b.position();
+		}
+		return rec;
+	}
+
+	// the contents of an interrupted journal
+	static class Recovered
+	{
+		File journal;
+		ReactionTimeExperimentConfiguration config;
+		long seed;
+		int trials;
+		boolean finished;
+		long validLength; // bytes up to and including the last good record
+
+		double[] time;
+		double[] dispatch;
+		double[] onsetError;
+		double[] outputLatency;
+		int[] late;
+		char[] key;
+		int[] match;
+		int[] error;
+		int[] side;
+		int[] errorCount;
+		int[] droppedFrames;
+		double[] prepareTime;
+		double[] onsetPath;
+
+		Recovered(File journalArg, ByteBuffer r)
+		{
+			journal = journalArg;
+			config = new ReactionTimeExperimentConfiguration();
+			config.setParticipantCode(r.getInt());
+			config.setBlockCode(r.getInt());
+			config.setMode(getString(r));
+			config.setNumberOfItems(r.getInt());
+			config.setNumberOfTrials(r.getInt());
+			config.setDispatchBudget(r.getInt());
+			seed = r.getLong();
+			config.setNumberOfChoices(r.getInt());
+			config.setResponseKeys(getString(r));
+			config.setScheduleFile(getString(r));
+
+			int n = config.getNumberOfTrials();
+			time = new double[n];
+			dispatch = new double[n];
+			onsetError = new double[n];
+			outputLatency = new double[n];
+			late = new int[n];
+			key = new char[n];
+			match = new int[n];
+			error = new int[n];
+			side = new int[n];
+			errorCount = new int[n];
+			droppedFrames = new int[n];
+			prepareTime = new double[n];
+			onsetPath = new double[n];
+		}
+
+		private void add(ByteBuffer r)
+		{
+			int i = trials;
+			time[i] = r.getDouble();
+			dispatch[i] = r.getDouble();
+			onsetError[i] = r.getDouble();
+			outputLatency[i] = r.getDouble();
+			late[i] = r.getInt();
+			key[i] = r.getChar();
+			match[i] = r.getInt();
+			error[i] = r.getInt();
+			side[i] = r.getInt();
+			errorCount[i] = r.getInt();
+			droppedFrames[i] = r.getInt();
+			prepareTime[i] = r.getDouble();
+			onsetPath[i] = r.getDouble();
+			trials = i + 1; // only once the whole record has been read
+		}
+
+		// put the recovered trials back into a freshly constructed experiment
+		void restore(ExperimentBlock f)
+		{
+			System.arraycopy(time, 0, f.time, 0, trials);
+			System.arraycopy(dispatch, 0, f.dispatch, 0, trials);
+			System.arraycopy(onsetError, 0, f.onsetError, 0, trials);
+			System.arraycopy(outputLatency, 0, f.outputLatency, 0, trials);
+			System.arraycopy(late, 0, f.late, 0, trials);
+			System.arraycopy(key, 0, f.key, 0, trials);
+			System.arraycopy(match, 0, f.match, 0, trials);
+			System.arraycopy(error, 0, f.error, 0, trials);
+			System.arraycopy(side, 0, f.side, 0, trials);
+			System.arraycopy(errorCount, 0, f.errorCount, 0, trials);
+			System.arraycopy(droppedFrames, 0, f.droppedFrames, 0, trials);
+			System.arraycopy(prepareTime, 0, f.prepareTime, 0, trials);
+			System.arraycopy(onsetPath, 0, f.onsetPath, 0, trials);
+			f.count = trials;
+			f.numberOfErrors = errorCount[trials - 1];
+		}
+
+		@Override
+		public String toString()
+		{
+			return config.getModeName() + ", participant " + config.getParticipantCode() + ", block "
+					+ config.getBlockCode() + ": " + trials + " of " + config.getNumberOfTrials() + " trials done";
+		}
+	}
+}
@@ -0,0 +1,320 @@
+import java.awt.event.KeyEvent;
+import java.io.*;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.swing.JComponent;
+
+// -----------------------------------------------------------------
+// SimulatedParticipant - run a block headless, with a model participant
+// -----------------------------------------------------------------
+
+/**
+ * Runs a block of trials without a display: the {@link TrialEngine}, {@link ExperimentBlock}, and
+ * response mapping are the ones a real session uses, but the stimuli go nowhere and the key
+ * presses come from a model participant. Time is a {@link VirtualClock}: foreperiods are not
+ * waited out, simulated time jumps straight to each deadline, so a block runs as fast as its
+ * output files can be written, and the same seed always gives the same data.
+ * <p>
+ * Reaction times are drawn from an ex-Gaussian distribution (normal with mean mu and SD sigma,
+ * plus an exponential with mean tau), with defaults per mode, number of choices, and set size.
+ * With probability <code>errors</code> the model presses a wrong response key. Start it with
+ *
+ * <pre>
+ *     java ReactionTimeExperiment -simulate -mode VS -items 16 -trials 10000 -seed 1
+ * </pre>
+ *
+ * (see {@link #USAGE}); the normal .sd1, .sd2, .hist, and .sched files are written to the current
+ * directory. As in a real session, the block's seed is derived from its configuration unless
+ * <code>-seed</code> gives one; <code>-modelseed</code> seeds the model participant's reaction
+ * times and errors (by default, the block's seed). With <code>-schedule</code> the block replays the
+ * trials of an earlier block's schedule file instead of drawing its own.
+ */
+class SimulatedParticipant
+{
+	static final String USAGE = "usage: java ReactionTimeExperiment -simulate [-mode SR|PM|NM|CM|VS]"
+			+ " [-participant n] [-block n] [-trials n] [-items n] [-choices n] [-keys \"K1 K2 ...\"]"
+			+ " [-mu ms] [-sigma ms] [-tau ms] [-errors p] [-seed n] [-modelseed n]"
+			+ " [-schedule file.sched]";
+
+	static final String[] MODES = { "SR", "PM", "NM", "CM", "VS" };
+
+	// keys tried as responses in visual search (match: F, J; no match: D, K)
+	static final int[] SEARCH_KEYS = { KeyEvent.VK_F, KeyEvent.VK_J, KeyEvent.VK_D, KeyEvent.VK_K };
+
+	final double mu; // ms
+	final double sigma; // ms
+	final double tau; // ms
+	final double errorRate;
+	final Random r; // the participant's own; the block's sequence is not disturbed
+
+	SimulatedParticipant(double muArg, double sigmaArg, double tauArg, double errorRateArg, long seed)
+	{
+		mu = muArg;
+		sigma = sigmaArg;
+		tau = tauArg;
+		errorRate = errorRateArg;
+		r = new Random(seed ^ 0x5DEECE66DL); // not the block's sequence, even with the same seed
+	}
+
+	// the model's default mean of the normal component (ms): Hick's law for the number of choices,
+	// slower for reversed mappings and audio, and linear in the set size for visual search
+	static double defaultMu(String mode, int choices, int setSize)
+	{
+		if (mode.equals("VS"))
+			return 450.0 + 25.0 * setSize;
+		double mu = 200.0 + 120.0 * (Math.log(choices) / Math.log(2.0));
+		if (mode.equals("PM") || mode.equals("CM"))
+			mu += 60.0;
+		if (mode.equals("NM") || mode.equals("CM"))
+			mu += 20.0;
+		return mu;
+	}
+
+	// SD of the normal component, and mean of the exponential tail (ms)
+	static double defaultSigma(String mode)
+	{
+		return mode.equals("VS") ? 60.0 : 30.0;
+	}
+
+	static double defaultTau(String mode)
+	{
+		return mode.equals("VS") ? 150.0 : 80.0;
+	}
+
+	// an ex-Gaussian reaction time (ms), never below 100 ms
+	double nextTime()
+	{
+		double t = mu + sigma * r.nextGaussian() - tau * Math.log(1.0 - r.nextDouble());
+		return Math.max(100.0, t);
+	}
+
+	// -----------
+	// Run a block
+	// -----------
+
+	// run every trial of the block and complete its output files (if it was opened)
+	void run(ExperimentBlock block) throws IOException
+	{
+		ResponseMapping mapping = block.responseMapping();
+		int[] candidates = block.visualSearch ? SEARCH_KEYS : KeyTableMapping.parseKeys(block.c.getResponseKeys(),
+				block.choices);
+		int stimuli = block.visualSearch ? 2 : block.choices;
+
+		// the correct key and the wrong keys for each stimulus
+		int[] correct = new int[stimuli];
+		int[][] wrong = new int[stimuli][];
+		for (int s = 0; s < stimuli; ++s)
+		{
+			int n = 0;
+			wrong[s] = new int[candidates.length];
+			for (int k = 0; k < candidates.length; ++k)
+			{
+				int outcome = mapping.classify(s, candidates[k]);
+				if (outcome == ResponseMapping.CORRECT)
+					correct[s] = candidates[k];
+				else if (outcome == ResponseMapping.WRONG)
+					wrong[s][n++] = candidates[k];
+			}
+			int[] w = new int[n];
+			System.arraycopy(wrong[s], 0, w, 0, n);
+			wrong[s] = w;
+		}
+
+		VirtualClock clock = new VirtualClock(0);
+		TrialEngine engine = new TrialEngine(block, new Presenter(block.visualSearch), mapping, clock, clock,
+				new TrialEngine.Listener()
+				{
+					public void blockDone()
+					{
+					}
+				});
+
+		engine.start();
+		while (clock.runNext()) // jump to the next event
+		{
+			if (engine.state() == TrialEngine.STIMULUS)
+			{
+				int s = block.schedule.stimulus[block.count];
+				int key = correct[s];
+				if (wrong[s].length > 0 && r.nextDouble() < errorRate)
+					key = wrong[s][r.nextInt(wrong[s].length)];
+				clock.advance(Math.round(nextTime() * ExperimentClock.NANOS_PER_MILLI));
+				engine.keyPressed(key, keyChar(key), clock.now(), clock.now());
+			}
+		}
+		if (block.sd1 != null)
+			block.finish();
+	}
+
+	// the character a key types, as far as the data files are concerned
+	static char keyChar(int keyCode)
+	{
+		if (keyCode >= KeyEvent.VK_A && keyCode <= KeyEvent.VK_Z || keyCode >= KeyEvent.VK_0
+				&& keyCode <= KeyEvent.VK_9)
+			return (char)keyCode;
+		return KeyEvent.CHAR_UNDEFINED;
+	}
+
+	// shows nothing
+	private static class Presenter implements StimulusPresenter
+	{
+		final boolean cue;
+
+		Presenter(boolean cueArg)
+		{
+			cue = cueArg;
+		}
+
+		public JComponent component()
+		{
+			return null;
+		}
+
+		public boolean hasCue()
+		{
+			return cue;
+		}
+
+		public StimulusCanvas canvas()
+		{
+			return null;
+		}
+
+		public void reset()
+		{
+		}
+
+		public void prepare(int trial)
+		{
+		}
+
+		public void cue(int trial)
+		{
+		}
+
+		public void present(int trial)
+		{
+		}
+
+		public long onsetTime(long presented)
+		{
+			return presented;
+		}
+
+		public void clear(int trial)
+		{
+		}
+	}
+
+	// ------------
+	// Command line
+	// ------------
+
+	// args are those following -simulate
+	static void main(String[] args)
+	{
+		ReactionTimeExperimentConfiguration c = new ReactionTimeExperimentConfiguration();
+		double mu = Double.NaN;
+		double sigma = Double.NaN;
+		double tau = Double.NaN;
+		double errors = 0.05;
+		long seed = 0;
+		boolean seeded = false; // block seed given, not derived from the configuration
+		long modelSeed = 0;
+		boolean modelSeeded = false;
+		boolean keys = false;
+		try
+		{
+			for (int i = 0; i < args.length; i += 2)
+			{
+				String name = args[i];
+				if (i + 1 == args.length)
+					throw new IllegalArgumentException("Missing value for " + name);
+				String value = args[i + 1];
+				if (name.equals("-mode"))
+					c.setMode(value.toUpperCase());
+				else if (name.equals("-participant"))
+					c.setParticipantCode(Integer.parseInt(value));
+				else if (name.equals("-block"))
+					c.setBlockCode(Integer.parseInt(value));
+				else if (name.equals("-trials"))
+					c.setNumberOfTrials(Integer.parseInt(value));
+				else if (name.equals("-items"))
+					c.setNumberOfItems(Integer.parseInt(value));
+				else if (name.equals("-choices"))
+					c.setNumberOfChoices(Integer.parseInt(value));
+				else if (name.equals("-keys"))
+				{
+					c.setResponseKeys(value);
+					keys = true;
+				} else if (name.equals("-mu"))
+					mu = Double.parseDouble(value);
+				else if (name.equals("-sigma"))
+					sigma = Double.parseDouble(value);
+				else if (name.equals("-tau"))
+					tau = Double.parseDouble(value);
+				else if (name.equals("-errors"))
+					errors = Double.parseDouble(value);
+				else if (name.equals("-seed"))
+				{
+					seed = Long.parseLong(value);
+					seeded = true;
+				} else if (name.equals("-modelseed"))
+				{
+					modelSeed = Long.parseLong(value);
+					modelSeeded = true;
+				} else if (name.equals("-schedule"))
+					c.setScheduleFile(value);
+				else
+					throw new IllegalArgumentException("Unknown option: " + name);
+			}
+			if (!Arrays.asList(MODES).contains(c.getMode()))
+				throw new IllegalArgumentException("Unknown mode: " + c.getMode());
+			if (c.getNumberOfTrials() <= 0)
+				throw new IllegalArgumentException("Number of trials must be > 0");
+		} catch (RuntimeException e) // bad number, missing value, ...
+		{
+			System.err.println(e.getMessage() != null ? e.getMessage() : e.toString());
+			System.err.println(USAGE);
+			System.exit(1);
+		}
+		if (!keys)
+			c.setResponseKeys(ReactionTimeExperimentConfiguration.defaultResponseKeys(c.getNumberOfChoices()));
+
+		int choices = c.getMode().equals("VS") ? 2 : c.getNumberOfChoices();
+		if (Double.isNaN(mu))
+			mu = defaultMu(c.getMode(), choices, c.getNumberOfItems());
+		if (Double.isNaN(sigma))
+			sigma = defaultSigma(c.getMode());
+		if (Double.isNaN(tau))
+			tau = defaultTau(c.getMode());
+
+		ExperimentBlock block = null;
+		long start = System.nanoTime();
+		try
+		{
+			block = seeded ? new ExperimentBlock(c, null, seed) : new ExperimentBlock(c, null);
+			if (!modelSeeded)
+				modelSeed = block.seed;
+			block.open(null);
+			new SimulatedParticipant(mu, sigma, tau, errors, modelSeed).run(block);
+		} catch (IllegalArgumentException e)
+		{
+			System.err.println(e.getMessage());
+			System.exit(1);
+		} catch (IOException e)
+		{
+			System.err.println("I/O error writing to output data file: " + e.getMessage());
+			System.exit(1);
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		System.out.println(String.format("%s: %d trials in %.2f s (%.0f trials/s)", block.base, block.count, seconds,
+				block.count / seconds));
+		System.out.println(String.format("  block seed=%d; model mu=%.1f sigma=%.1f tau=%.1f errors=%.3f seed=%d",
+				block.seed, mu, sigma, tau, errors, modelSeed));
+		System.out.println(String.format("  mean=%.1f sd=%.1f min=%.1f max=%.1f errors=%d (ms)", block.stats.all.mean(),
+				block.stats.all.sd(), block.stats.all.min(), block.stats.all.max(), block.numberOfErrors));
+	}
+}
@@ -0,0 +1,106 @@
+// -----------------------------------------------------------------
+// SplitMix - small, fast, splittable random number generator
+// -----------------------------------------------------------------
+
+/**
+ * SplitMix64 (Steele, Lea and Flood, "Fast splittable pseudorandom number generators", 2014): a
+ * 64-bit counter stepped by an odd "gamma" and passed through a mixing function. {@link #split()}
+ * returns a new generator with its own seed and gamma, statistically independent of the parent, so
+ * a tree of parallel tasks can each take a stream without sharing (or locking) a generator.
+ * <p>
+ * Not thread-safe; each thread or task uses its own. Draws allocate nothing.
+ */
+class SplitMix
+{
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+	private long seed;
+	private final long gamma; // odd
+
+	SplitMix(long seedArg)
+	{
+		this(seedArg, GOLDEN_GAMMA);
+	}
+
+	private SplitMix(long seedArg, long gammaArg)
+	{
+		seed = seedArg;
+		gamma = gammaArg;
+	}
+
+	// an independent generator; this one carries on with its own sequence
+	SplitMix split()
+	{
+		return new SplitMix(nextLong(), mixGamma(nextSeed()));
+	}
+
+	// restart at position k along the sequence that starts at start: each position is 2^32 draws
+	// from the previous one, so positions (trials, say) don't overlap and any one can be reached
+	// directly
+	void setPosition(long start, int k)
+	{
+		seed = start + ((long)k << 32) * gamma;
+	}
+
+	long nextLong()
+	{
+		return mix64(nextSeed());
+	}
+
+	int nextInt()
+	{
+		return (int)(mix64(nextSeed()) >>> 32);
+	}
+
+	// uniform in [0, bound), bound > 0
+	int nextInt(int bound)
+	{
+		int r = nextInt() >>> 1;
+		int m = bound - 1;
+		if ((bound & m) == 0) // power of two
+			return (int)((bound * (long)r) >> 31);
+		for (int u = r; u - (r = u % bound) + m < 0; u = nextInt() >>> 1)
+			; // reject the top, partial range
+		return r;
+	}
+
+	// uniform in [0, 1)
+	double nextDouble()
+	{
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+
+	boolean nextBoolean()
+	{
+		return nextInt() < 0;
+	}
+
+	// standard normal (Box-Muller; the second value is not kept, so the state stays one long)
+	double nextGaussian()
+	{
+		double u = 1.0 - nextDouble(); // (0, 1]
+		double v = nextDouble();
+		return Math.sqrt(-2.0 * Math.log(u)) * Math.cos(2.0 * Math.PI * v);
+	}
+
+	private long nextSeed()
+	{
+		return seed += gamma;
+	}
+
+	private static long mix64(long z)
+	{
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	private static long mixGamma(long z)
+	{
+		z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+		z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+		z = (z ^ (z >>> 33)) | 1L;
+		int n = Long.bitCount(z ^ (z >>> 1)); // too regular a gamma gives poor streams
+		return n < 24 ? z ^ 0xAAAAAAAAAAAAAAAAL : z;
+	}
+}
@@ -0,0 +1,264 @@
+import java.awt.*;
+import java.awt.image.BufferStrategy;
+import java.awt.image.VolatileImage;
+import java.util.Arrays;
+
+// -----------------------------------------------------------------
+// StimulusCanvas - visual stimuli drawn and flipped directly
+// -----------------------------------------------------------------
+
+/**
+ * Active rendering for visual stimuli. A Swing <code>setBackground()</code> only queues a repaint,
+ * which reaches the screen some unknown number of frames later; here the presenter draws the whole
+ * {@link Scene} into a back buffer and {@link #show} flips it straight away, returning the
+ * reading of the engine's {@link Clock} just after the flip, which is when the stimulus went up.
+ * <p>
+ * In a full-screen exclusive window the buffer strategy pages (swaps buffers on the vertical
+ * retrace, where the platform supports it); in a normal window it blits. Either way nothing waits
+ * for Swing's repaint manager. Call from the EDT.
+ * <p>
+ * The canvas also keeps track of the display's frames: the refresh period and phase are estimated
+ * from flip timestamps (a burst of flips when the canvas first goes on screen, then every flip),
+ * so an onset can be scheduled for a frame ({@link #frameAtOrAfter}) rather than a millisecond,
+ * and a flip that misses its frame is counted as dropped frames ({@link #droppedFrames}). If the
+ * flips turn out not to wait for the retrace (a blitting window, say), the period comes from the
+ * display mode and the phase is only a guess ({@link #synced()} is false).
+ * <p>
+ * A stimulus frame can be rendered ahead of its onset with {@link #prepare}, into an off-screen
+ * (accelerated where possible) image; {@link #showPrepared} then only copies that image to the
+ * back buffer and flips, whatever the scene costs to draw.
+ */
+class StimulusCanvas extends Canvas
+{
+	private static final long serialVersionUID = 1L;
+
+	static final int CALIBRATION_FLIPS = 30;
+	static final long PRESENT_LEAD = 3 * ExperimentClock.NANOS_PER_MILLI; // draw and submit before the frame
+	static final int DEFAULT_REFRESH = 60; // Hz, if the display mode doesn't say
+
+	// one complete frame
+	interface Scene
+	{
+		void paint(Graphics2D g, int width, int height);
+	}
+
+	private final Clock clock; // the engine's time base
+	private BufferStrategy strategy;
+	private Scene scene; // the one on screen, drawn again if the window is exposed
+	private long lastFlip = -1; // clock reading just after the last show()
+
+	private int refreshRate; // Hz, from the display mode (see readRefreshRate); 0 if unknown
+	private boolean calibrated;
+	private boolean synced; // flips wait for the retrace, so their timestamps mark frames
+	private double period; // ns per frame, 0 until known
+	private long phase; // a frame boundary (the last synchronized flip)
+
+	private VolatileImage prepared; // a frame rendered ahead of time (see prepare)
+	private boolean usePrepared; // the flip in progress copies it rather than drawing the scene
+
+	StimulusCanvas(Dimension size, Clock clockArg)
+	{
+		clock = clockArg;
+		setPreferredSize(size);
+		setBackground(Color.black);
+	}
+
+	// draw the scene and flip it to the screen; returns the time just after the flip (or now, if the
+	// canvas is not on screen yet: the scene is drawn once it is)
+	long show(Scene sceneArg)
+	{
+		scene = sceneArg;
+		if (!isDisplayable())
+			return clock.now();
+		if (strategy == null)
+		{
+			createBufferStrategy(2);
+			strategy = getBufferStrategy();
+		}
+		if (!calibrated)
+			calibrate();
+		lastFlip = flip();
+		track(lastFlip);
+		return lastFlip;
+	}
+
+	// render a scene off screen now, for showPrepared() to put up later (if the canvas isn't on
+	// screen yet there is nothing to render into, and showPrepared() draws the scene itself)
+	void prepare(Scene next)
+	{
+		int width = getWidth();
+		int height = getHeight();
+		if (!isDisplayable() || width <= 0 || height <= 0)
+			return;
+		if (prepared == null || prepared.getWidth() != width || prepared.getHeight() != height
+				|| prepared.validate(getGraphicsConfiguration()) == VolatileImage.IMAGE_INCOMPATIBLE)
+		{
+			if (prepared != null)
+				prepared.flush();
+			prepared = createVolatileImage(width, height);
+		}
+		do
+		{
+			prepared.validate(getGraphicsConfiguration());
+			Graphics2D g = prepared.createGraphics();
+			try
+			{
+				next.paint(g, width, height);
+			} finally
+			{
+				g.dispose();
+			}
+		} while (prepared.contentsLost());
+	}
+
+	// show the frame last given to prepare(); sceneArg is the same frame, drawn from scratch only if
+	// the prepared copy has been lost (or the canvas was resized) in the meantime
+	long showPrepared(Scene sceneArg)
+	{
+		usePrepared = prepared != null;
+		try
+		{
+			return show(sceneArg);
+		} finally
+		{
+			usePrepared = false;
+		}
+	}
+
+	// draw the scene into the back buffer and show it; the time just after
+	private long flip()
+	{
+		do
+		{
+			do
+			{
+				Graphics2D g = (Graphics2D)strategy.getDrawGraphics();
+				try
+				{
+					if (usePrepared && prepared.getWidth() == getWidth() && prepared.getHeight() == getHeight()
+							&& prepared.validate(getGraphicsConfiguration()) == VolatileImage.IMAGE_OK)
+						g.drawImage(prepared, 0, 0, null);
+					else
+						scene.paint(g, getWidth(), getHeight());
+				} finally
+				{
+					g.dispose();
+				}
+			} while (strategy.contentsRestored());
+			strategy.show();
+		} while (strategy.contentsLost());
+		Toolkit.getDefaultToolkit().sync();
+		return clock.now();
+	}
+
+	// flip the current scene a number of times: if the flips wait for the retrace, the median
+	// interval is the refresh period
+	private void calibrate()
+	{
+		calibrated = true;
+		double nominal = 1e9 / (refreshRate > 0 ? refreshRate : DEFAULT_REFRESH);
+		long[] interval = new long[CALIBRATION_FLIPS];
+		long t = flip();
+		for (int i = 0; i < CALIBRATION_FLIPS; ++i)
+		{
+			long u = flip();
+			interval[i] = u - t;
+			t = u;
+		}
+		Arrays.sort(interval);
+		long median = interval[CALIBRATION_FLIPS / 2];
+		synced = median > nominal / 2 && median < nominal * 2;
+		period = synced ? median : nominal;
+		phase = t;
+	}
+
+	// follow the display from each flip: a synchronized flip is a frame boundary, and its offset
+	// from where the estimate put that boundary nudges the period
+	private void track(long flip)
+	{
+		if (!synced)
+		{
+			phase = flip;
+			return;
+		}
+		long k = Math.round((flip - phase) / period);
+		if (k > 0)
+		{
+			double residual = flip - (phase + k * period);
+			if (Math.abs(residual) < period / 4)
+				period += residual / k / 8;
+		}
+		phase = flip;
+	}
+
+	// the first frame boundary at or after t (t itself until the frames are known)
+	long frameAtOrAfter(long t)
+	{
+		if (period <= 0)
+			return t;
+		double frames = Math.ceil((t - phase) / period);
+		return phase + Math.round(frames * period);
+	}
+
+	// how long before its frame a stimulus has to be presented
+	long presentLead()
+	{
+		return synced ? PRESENT_LEAD : 0;
+	}
+
+	// frames missed by a flip meant for the frame at target that happened at flip
+	int droppedFrames(long target, long flip)
+	{
+		if (period <= 0)
+			return 0;
+		double late = flip - target;
+		return late > period / 2 ? (int)Math.round(late / period) : 0;
+	}
+
+	// estimated refresh period (ns), 0 until the canvas has been on screen
+	double period()
+	{
+		return period;
+	}
+
+	boolean synced()
+	{
+		return synced;
+	}
+
+	long lastFlip()
+	{
+		return lastFlip;
+	}
+
+	// read the display's refresh rate (Hz, 0 if the platform doesn't say) and keep it for
+	// calibration; call before the window is shown, not on the EDT: getDisplayMode() locks the
+	// device, which setFullScreenWindow() holds while it puts the window up
+	int readRefreshRate()
+	{
+		GraphicsConfiguration gc = getGraphicsConfiguration();
+		GraphicsDevice device = gc != null ? gc.getDevice() : GraphicsEnvironment.getLocalGraphicsEnvironment()
+				.getDefaultScreenDevice();
+		int hz = device.getDisplayMode().getRefreshRate();
+		refreshRate = hz == DisplayMode.REFRESH_RATE_UNKNOWN ? 0 : hz;
+		return refreshRate;
+	}
+
+	// as last read (0 if unknown, or not read yet)
+	int refreshRate()
+	{
+		return refreshRate;
+	}
+
+	// exposed or resized by the window system: put the current scene back
+	public void paint(Graphics g)
+	{
+		if (scene != null)
+			show(scene);
+	}
+
+	public void update(Graphics g)
+	{
+		paint(g);
+	}
+}
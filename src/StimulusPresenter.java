@@ -0,0 +1,46 @@
+import javax.swing.*;
+
+// -----------------------------------------------------------------
+// StimulusPresenter - how a mode shows (or plays) its stimuli
+// -----------------------------------------------------------------
+
+/**
+ * The part of a trial that differs between modes: what the participant sees or hears. The
+ * {@link TrialEngine} decides when; the {@link TrialSchedule} decides what, and the presenter
+ * shows it. Trials are passed by index into the schedule. All methods are called on the engine's
+ * thread (the EDT).
+ * <p>
+ * Everything a stimulus needs (a rendered frame, the clip to play) is got ready by
+ * {@link #prepare} during the interval before its trial, so that {@link #present} only has to put
+ * it up.
+ */
+interface StimulusPresenter
+{
+	// the component to show in the trial dialog (null if there is nothing to see)
+	JComponent component();
+
+	// true if each trial begins with a warning stimulus (see cue)
+	boolean hasCue();
+
+	// the display canvas the stimuli are drawn on (onsets are then aligned to its frames), or null
+	StimulusCanvas canvas();
+
+	// initial display, before the first trial
+	void reset();
+
+	// get the trial's stimulus ready, in the interval before the trial (the previous one is done)
+	void prepare(int trial);
+
+	// show the warning stimulus for the coming trial
+	void cue(int trial);
+
+	// present the trial's stimulus, as prepared (the engine takes the onset time from its clock
+	// straight after)
+	void present(int trial);
+
+	// a better estimate of the onset returned by present(), once the response arrives
+	long onsetTime(long presented);
+
+	// remove the trial's stimulus after the response
+	void clear(int trial);
+}
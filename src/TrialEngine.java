@@ -0,0 +1,198 @@
+// -----------------------------------------------------------------
+// TrialEngine - the trial sequence shared by every experiment mode
+// -----------------------------------------------------------------
+
+/**
+ * Runs a block of trials as a small state machine, the same way for every mode; what differs
+ * between modes is only the {@link StimulusPresenter} (panels, audio, search grid), the
+ * {@link ResponseMapping}, and the {@link TrialSchedule} the block was given.
+ *
+ * <pre>
+ *   [CUE] --cue delay--&gt; FOREPERIOD --foreperiod--&gt; STIMULUS --response--&gt; PREPARE --&gt; (next trial) ... DONE
+ * </pre>
+ *
+ * The CUE state is used only by presenters with a warning stimulus (visual search shows the target
+ * letter before the search grid). A response key pressed before the stimulus is an anticipation
+ * error; keys the mapping doesn't use are ignored.
+ * <p>
+ * When the presenter draws on a {@link StimulusCanvas}, the stimulus onset is scheduled for a
+ * display frame (the first at or after the foreperiod's end) rather than a millisecond: present()
+ * is called just ahead of that frame, the onset error is measured against it, and a flip that
+ * misses it is recorded as dropped frames on the trial.
+ * <p>
+ * Each trial's stimulus is prepared (see {@link StimulusPresenter#prepare}) as soon as the trial
+ * before it is done, so the onset itself is only present() and a clock reading. Preparing can mean
+ * drawing a whole frame, so it is not done in the key handler: the response schedules it as a task
+ * of its own (the PREPARE state), due at once, and events queued behind the response are handled
+ * first. The preparation is timed per trial, and so is the onset path, from the scheduler firing
+ * to the stimulus being up.
+ * <p>
+ * All methods run on one thread (the EDT in the application). Every time the engine uses comes from
+ * its {@link Clock}, and every delay goes through its {@link Scheduler}, so a {@link VirtualClock}
+ * can stand in for both. {@link #keyPressed} is the hot path: it does a constant amount of work and
+ * allocates nothing.
+ */
+class TrialEngine implements Scheduler.Task, InputCapture.Listener
+{
+	interface Listener
+	{
+		// every trial of the block has been run
+		void blockDone();
+	}
+
+	static final int IDLE = 0;
+	static final int CUE = 1;
+	static final int FOREPERIOD = 2;
+	static final int STIMULUS = 3;
+	static final int DONE = 4;
+	static final int PREPARE = 5; // the response is in; the next trial's stimulus is to be prepared
+
+	static final long FIRST_DELAY = ExperimentClock.fromMillis(2000); // block start to first event
+	static final long CUE_DELAY = ExperimentClock.fromMillis(2000); // response to next cue
+
+	private final ExperimentBlock block;
+	private final StimulusPresenter presenter;
+	private final ResponseMapping mapping;
+	private final Clock clock;
+	private final Scheduler scheduler;
+	private final TrialSchedule schedule;
+	private final StimulusCanvas canvas; // null if onsets aren't tied to display frames
+	private final Listener listener;
+
+	private int state = IDLE;
+	private int trial; // index of the current trial in the schedule
+	private int stimulus; // of the current trial
+	private long onset; // ExperimentClock reading of the current stimulus onset
+	private long target; // when the onset is due (a display frame, with a canvas)
+	private long responded; // when the last response was handled (the next trial's delay runs from it)
+
+	TrialEngine(ExperimentBlock blockArg, StimulusPresenter presenterArg, ResponseMapping mappingArg,
+			Clock clockArg, Scheduler schedulerArg, Listener listenerArg)
+	{
+		block = blockArg;
+		presenter = presenterArg;
+		mapping = mappingArg;
+		clock = clockArg;
+		scheduler = schedulerArg;
+		schedule = block.schedule;
+		canvas = presenter.canvas();
+		listener = listenerArg;
+	}
+
+	int state()
+	{
+		return state;
+	}
+
+	// begin (or resume) the block
+	void start()
+	{
+		presenter.reset();
+		nextTrial(clock.now(), FIRST_DELAY);
+	}
+
+	void stop()
+	{
+		scheduler.cancel();
+		state = DONE;
+	}
+
+	public void onsetDue(long deadline)
+	{
+		if (state == PREPARE)
+			nextTrial(responded, presenter.hasCue() ? CUE_DELAY : foreperiod());
+		else if (state == CUE)
+		{
+			presenter.cue(trial);
+			state = FOREPERIOD;
+			scheduleOnset(deadline + foreperiod());
+		} else if (state == FOREPERIOD)
+		{
+			long fired = clock.now();
+			presenter.present(trial);
+			onset = clock.now();
+			block.onset(stimulus, target, fired, onset);
+			if (canvas != null)
+				block.droppedFrames(canvas.droppedFrames(target, onset));
+			state = STIMULUS;
+		}
+	}
+
+	// a key was pressed; when is the time the event was generated, handled the time it got here
+	// (both ExperimentClock readings)
+	public void keyPressed(int keyCode, char keyChar, long when, long handled)
+	{
+		int outcome = mapping.classify(stimulus, keyCode);
+		if (outcome == ResponseMapping.IGNORE || state == DONE || state == IDLE)
+			return;
+		if (state != STIMULUS)
+		{
+			block.anticipation();
+			return;
+		}
+
+		long refined = presenter.onsetTime(onset);
+		if (refined != onset)
+		{
+			block.onsetRefined(onset, refined);
+			onset = refined;
+		}
+		block.response(onset, when, handled, Character.toLowerCase(keyChar), outcome == ResponseMapping.WRONG);
+		presenter.clear(trial);
+		block.trialDone();
+
+		if (block.done())
+		{
+			state = DONE;
+			listener.blockDone();
+		} else
+		{
+			state = PREPARE;
+			responded = handled;
+			scheduler.schedule(handled, this); // due already: runs after whatever is queued now
+		}
+	}
+
+	// releases are not responses
+	public void keyReleased(int keyCode, long when, long handled)
+	{
+	}
+
+	private void nextTrial(long from, long delay)
+	{
+		trial = block.count;
+		stimulus = schedule.stimulus[trial];
+		long t = clock.now();
+		presenter.prepare(trial);
+		block.prepared(t, clock.now());
+		if (presenter.hasCue())
+		{
+			state = CUE;
+			scheduler.schedule(from + delay, this);
+		} else
+		{
+			state = FOREPERIOD;
+			scheduleOnset(from + delay);
+		}
+	}
+
+	// the stimulus is due at wanted, or at the first display frame after it
+	private void scheduleOnset(long wanted)
+	{
+		if (canvas == null)
+		{
+			target = wanted;
+			scheduler.schedule(target, this);
+		} else
+		{
+			target = canvas.frameAtOrAfter(wanted);
+			scheduler.schedule(target - canvas.presentLead(), this);
+		}
+	}
+
+	// of the current trial (or the next one, once the current one is done)
+	private long foreperiod()
+	{
+		return ExperimentClock.fromMillis(schedule.foreperiod[block.count]);
+	}
+}
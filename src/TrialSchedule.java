@@ -0,0 +1,161 @@
+import java.io.*;
+
+// -----------------------------------------------------------------
+// TrialSchedule - every trial of a block, decided before it starts
+// -----------------------------------------------------------------
+
+/**
+ * What each trial of a block presents, generated from the block's {@link Randomizer} before the
+ * first trial (or read back from a schedule file) and kept in primitive arrays: the stimulus
+ * (side, or match flag in visual search), the foreperiod, and for visual search the target letter,
+ * its location, and the letters of the whole grid. During the block the trial loop only indexes
+ * into these arrays; nothing is drawn or decided between a response and the next onset.
+ * <p>
+ * Each block's schedule is saved next to its data (extension <code>.sched</code>). Giving that
+ * file as the schedule of another session (another station, another participant) replays exactly
+ * the same trials.
+ */
+class TrialSchedule
+{
+	static final String SUFFIX = ".sched";
+	static final int LETTERS = 26; // A to Z
+	static final int MAX_RUN = 4; // no stimulus (or match/no-match) more than this many times in a row
+
+	private static final int MAGIC = 0x52545331; // "RTS1"
+
+	final String mode;
+	final int trials;
+	final int choices; // stimuli 0 .. choices - 1 (2 in visual search: no match, match)
+	final int items; // letters in each search grid (0 outside visual search)
+	final long seed; // of the Randomizer it was generated from
+
+	final byte[] stimulus; // side, or match flag (visual search)
+	final short[] foreperiod; // ms
+	final byte[] target; // visual search: the letter to look for (0 = A)
+	final short[] location; // visual search: where the target is, if it is there
+	final byte[] letter; // visual search: the grid, items per trial
+
+	TrialSchedule(String modeArg, int trialsArg, int choicesArg, int itemsArg, long seedArg)
+	{
+		mode = modeArg;
+		trials = trialsArg;
+		choices = choicesArg;
+		items = itemsArg;
+		seed = seedArg;
+		stimulus = new byte[trials];
+		foreperiod = new short[trials];
+		target = new byte[items > 0 ? trials : 0];
+		location = new short[items > 0 ? trials : 0];
+		letter = new byte[trials * items];
+	}
+
+	// generate the schedule of a block; foreperiods are foreperiodMin + U(foreperiodRange) ms
+	static TrialSchedule generate(String mode, int trials, int choices, int items, int foreperiodMin,
+			int foreperiodRange, Randomizer random)
+	{
+		boolean visualSearch = mode.equals("VS");
+		TrialSchedule s = new TrialSchedule(mode, trials, choices, visualSearch ? items : 0, random.seed);
+
+		// balanced stimulus (or match/no-match) sequence, drawn for the whole block at once
+		random.trial(-1);
+		int[] sequence = new ConditionShuffler(choices).sequence(trials, MAX_RUN, visualSearch ? random.match
+				: random.side);
+
+		for (int i = 0; i < trials; ++i)
+		{
+			random.trial(i);
+			s.foreperiod[i] = (short)(foreperiodMin + random.foreperiod.nextInt(foreperiodRange));
+			s.stimulus[i] = (byte)sequence[i];
+			if (!visualSearch)
+				continue;
+
+			int t = random.letters.nextInt(LETTERS);
+			s.target[i] = (byte)t;
+			// location of match random (but, of course, no-match 50% of time)
+			s.location[i] = (short)random.letters.nextInt(items);
+			for (int k = 0; k < items; ++k)
+			{
+				// distractors: any letter but the target
+				int d = random.letters.nextInt(LETTERS - 1);
+				s.letter[i * items + k] = (byte)(d >= t ? d + 1 : d);
+			}
+			if (s.stimulus[i] == 1)
+				s.letter[i * items + s.location[i]] = (byte)t;
+		}
+		random.trial(0);
+		return s;
+	}
+
+	// the letter at position k of trial i's search grid (0 = A)
+	int letter(int i, int k)
+	{
+		return letter[i * items + k];
+	}
+
+	// ------------------
+	// Schedule files
+	// ------------------
+
+	void write(String fileName) throws IOException
+	{
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)));
+		try
+		{
+			out.writeInt(MAGIC);
+			out.writeUTF(mode);
+			out.writeInt(trials);
+			out.writeInt(choices);
+			out.writeInt(items);
+			out.writeLong(seed);
+			out.write(stimulus);
+			for (int i = 0; i < trials; ++i)
+				out.writeShort(foreperiod[i]);
+			out.write(target);
+			for (int i = 0; i < location.length; ++i)
+				out.writeShort(location[i]);
+			out.write(letter);
+		} finally
+		{
+			out.close();
+		}
+	}
+
+	static TrialSchedule read(File file) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try
+		{
+			if (in.readInt() != MAGIC)
+				throw new IOException("Not a trial schedule: " + file);
+			String mode = in.readUTF();
+			int trials = in.readInt();
+			int choices = in.readInt();
+			int items = in.readInt();
+			if (trials < 0 || choices < 1 || items < 0 || (long)trials * items > Integer.MAX_VALUE)
+				throw new IOException("Corrupt trial schedule: " + file);
+			TrialSchedule s = new TrialSchedule(mode, trials, choices, items, in.readLong());
+			in.readFully(s.stimulus);
+			for (int i = 0; i < trials; ++i)
+				s.foreperiod[i] = in.readShort();
+			in.readFully(s.target);
+			for (int i = 0; i < s.location.length; ++i)
+				s.location[i] = in.readShort();
+			in.readFully(s.letter);
+			return s;
+		} finally
+		{
+			in.close();
+		}
+	}
+
+	// a schedule file fits a block if it has the same mode, trials, choices, and set size
+	void check(String modeArg, int trialsArg, int choicesArg, int itemsArg) throws IOException
+	{
+		boolean visualSearch = modeArg.equals("VS");
+		if (!mode.equals(modeArg) || trials != trialsArg || choices != choicesArg
+				|| items != (visualSearch ? itemsArg : 0))
+			throw new IOException("The trial schedule is for " + mode + ", " + trials + " trials, " + choices
+					+ " choices" + (items > 0 ? ", " + items + " items" : "") + "; this block is " + modeArg + ", "
+					+ trialsArg + " trials, " + choicesArg + " choices" + (visualSearch ? ", " + itemsArg + " items" : ""));
+	}
+}
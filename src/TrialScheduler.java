@@ -0,0 +1,130 @@
+import java.awt.EventQueue;
+
+// -----------------------------------------------------------------
+// TrialScheduler - precise stimulus onsets on a dedicated thread
+// -----------------------------------------------------------------
+
+/**
+ * Runs trial events (foreperiod expiry, stimulus onset) at absolute deadlines on the
+ * {@link ExperimentClock} time base.
+ * <p>
+ * A <code>javax.swing.Timer</code> coalesces events, fires from the EDT's own timer queue, and
+ * overshoots by 10-20 ms under load. Here a dedicated high-priority thread sleeps coarsely until
+ * shortly before the deadline and then spins for the final approach. The task is handed to the
+ * EDT a little ahead of its deadline (the lead), and the EDT spins out the rest, so the time the
+ * hand-off spends in the event queue is not added to the onset. The lead follows the queueing
+ * delays actually seen: it rises at once after a slow hand-off and comes down slowly, up to at
+ * most {@link #MAX_LEAD} (beyond that an onset is late, and its onset error shows by how much).
+ * Deadlines are absolute, so a long block does not accumulate drift; the task is passed the
+ * deadline it was scheduled for so the caller can record the actual onset error.
+ * <p>
+ * Only one task is pending at a time; scheduling again replaces it. Tasks are called on the EDT.
+ */
+class TrialScheduler implements Scheduler, Runnable
+{
+	// how long before the deadline to stop sleeping and start spinning
+	static final long SPIN_NANOS = 2 * ExperimentClock.NANOS_PER_MILLI;
+
+	// how far ahead of the deadline to hand the task to the EDT: the queueing delay seen, plus a
+	// margin, within these bounds
+	static final long MIN_LEAD = ExperimentClock.NANOS_PER_MILLI / 5;
+	static final long MAX_LEAD = 2 * ExperimentClock.NANOS_PER_MILLI;
+	static final long LEAD_MARGIN = ExperimentClock.NANOS_PER_MILLI / 5;
+
+	private Task task; // pending task, null if none (guarded by this)
+	private long deadline;
+	private int generation; // bumped on every schedule/cancel so a stale spin can tell
+	private volatile long queueing = ExperimentClock.NANOS_PER_MILLI / 2; // EDT hand-off delay (estimate)
+
+	TrialScheduler()
+	{
+		Thread thread = new Thread(this, "TrialScheduler");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MAX_PRIORITY);
+		thread.start();
+	}
+
+	public synchronized void schedule(long deadlineArg, Task taskArg)
+	{
+		deadline = deadlineArg;
+		task = taskArg;
+		++generation;
+		notifyAll();
+	}
+
+	public synchronized void cancel()
+	{
+		task = null;
+		++generation;
+		notifyAll();
+	}
+
+	public void run()
+	{
+		while (true)
+		{
+			final Task t;
+			final long d;
+			int g;
+
+			// coarse phase: sleep until the hand-off is within SPIN_NANOS
+			synchronized (this)
+			{
+				try
+				{
+					while (task == null || deadline - lead() - ExperimentClock.now() > SPIN_NANOS)
+					{
+						if (task == null)
+							wait();
+						else
+						{
+							long coarse = deadline - lead() - ExperimentClock.now() - SPIN_NANOS;
+							wait(coarse / ExperimentClock.NANOS_PER_MILLI, (int)(coarse % ExperimentClock.NANOS_PER_MILLI));
+						}
+					}
+				} catch (InterruptedException e)
+				{
+					return;
+				}
+				t = task;
+				d = deadline;
+				g = generation;
+			}
+
+			// fine phase: spin (without holding the lock) up to the hand-off
+			final long posted = d - lead();
+			while (ExperimentClock.now() < posted)
+				;
+
+			synchronized (this)
+			{
+				if (g != generation) // rescheduled or cancelled while spinning
+					continue;
+				task = null;
+			}
+			final long handOff = ExperimentClock.now(); // posted, or later if the deadline had passed
+			EventQueue.invokeLater(new Runnable()
+			{
+				public void run()
+				{
+					handedOver(ExperimentClock.now() - handOff);
+					while (ExperimentClock.now() < d) // the rest of the lead, on the EDT
+						;
+					t.onsetDue(d);
+				}
+			});
+		}
+	}
+
+	private long lead()
+	{
+		return Math.max(MIN_LEAD, Math.min(MAX_LEAD, queueing + LEAD_MARGIN));
+	}
+
+	// a hand-off took this long to reach the EDT: follow a rise at once, a fall slowly (EDT only)
+	private void handedOver(long delay)
+	{
+		long q = queueing;
+		queueing = delay > q ? delay : q + (delay - q) / 16;
+	}
+}
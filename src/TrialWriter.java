@@ -0,0 +1,120 @@
+import java.io.*;
+import java.util.concurrent.locks.LockSupport;
+
+// -----------------------------------------------------------------
+// TrialWriter - streams per-trial records to the .sd1 file
+// -----------------------------------------------------------------
+
+/**
+ * Writes each trial's row of the .sd1 file as soon as the trial completes, on a thread of its
+ * own, so the response handler never touches the filesystem.
+ * <p>
+ * The trial data already live in the experiment's preallocated per-trial arrays, so the hand-off
+ * is a single-producer, single-consumer queue over those arrays: the producer (the EDT) fills in
+ * trial <code>i</code> and then publishes the count <code>i + 1</code> through a volatile cursor;
+ * the writer encodes every row below the cursor (with a {@link CsvEncoder}, so writing allocates
+ * nothing either). Publishing is wait-free and allocation-free.
+ * <p>
+ * The writer drains the queue in batches and flushes each batch to the operating system, so a
+ * crash of the JVM only loses the record in flight. At the end of a block {@link #finish()}
+ * waits for the last rows and forces the file to the storage device.
+ * <p>
+ * If a {@link SessionJournal} is given, each trial is also appended to it as its row is written.
+ */
+class TrialWriter implements Runnable
+{
+	interface Format
+	{
+		// column names, including the trailing newline
+		String SD1Header();
+
+		// encode one trial's row, including the trailing newline
+		void SD1Row(int trial, CsvEncoder out) throws IOException;
+	}
+
+	private final FileOutputStream out;
+	private final CsvEncoder csv;
+	private final Format format;
+	private final SessionJournal journal; // may be null
+	private final Thread thread;
+
+	private volatile int published; // trials [0, published) are complete (written by the producer only)
+	private volatile boolean finished;
+	private IOException failure; // first write error, reported by finish()
+
+	TrialWriter(String fileName, Format formatArg, SessionJournal journalArg) throws IOException
+	{
+		out = new FileOutputStream(fileName);
+		csv = new CsvEncoder(out, 64 * 1024);
+		format = formatArg;
+		journal = journalArg;
+		csv.put(format.SD1Header());
+		csv.flush();
+
+		thread = new Thread(this, "TrialWriter");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	// trials [0, n) are complete; called from the response handler, so it must not block
+	void publish(int n)
+	{
+		published = n;
+		LockSupport.unpark(thread);
+	}
+
+	// wait for every published trial to be written, then force the file to disk and close it
+	void finish() throws IOException
+	{
+		finished = true;
+		LockSupport.unpark(thread);
+		try
+		{
+			thread.join();
+		} catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		try
+		{
+			if (failure != null)
+				throw failure;
+			csv.flush();
+			out.getFD().sync();
+		} finally
+		{
+			csv.close();
+		}
+	}
+
+	public void run()
+	{
+		int written = 0;
+		while (true)
+		{
+			boolean last = finished; // read before the cursor, so no row published before finish() is missed
+			int n = published;
+			if (written < n)
+			{
+				try
+				{
+					for (; written < n; ++written)
+					{
+						format.SD1Row(written, csv);
+						if (journal != null)
+							journal.trial(written);
+					}
+					csv.flush(); // batch done: hand it to the OS
+				} catch (IOException e)
+				{
+					if (failure == null)
+						failure = e;
+					written = n;
+				}
+			} else if (last)
+				return;
+			else
+				LockSupport.park(this);
+		}
+	}
+}
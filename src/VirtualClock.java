@@ -0,0 +1,68 @@
+// -----------------------------------------------------------------
+// VirtualClock - simulated time for the trial logic
+// -----------------------------------------------------------------
+
+/**
+ * A {@link Clock} and {@link Scheduler} in one, where time stands still until the caller moves it.
+ * {@link #runNext()} jumps straight to the pending deadline and runs its task, so foreperiods of
+ * several seconds cost nothing; {@link #advance(long)} moves time forward by a given amount (a
+ * simulated reaction time, say), running anything that falls due on the way.
+ * <p>
+ * Tasks run on the caller's thread, at exactly their deadline, so a run driven by a virtual clock
+ * is exactly reproducible.
+ */
+class VirtualClock implements Clock, Scheduler
+{
+	private long now;
+	private Task task; // pending task, null if none
+	private long deadline;
+
+	VirtualClock(long start)
+	{
+		now = start;
+	}
+
+	public long now()
+	{
+		return now;
+	}
+
+	public void schedule(long deadlineArg, Task taskArg)
+	{
+		deadline = deadlineArg;
+		task = taskArg;
+	}
+
+	public void cancel()
+	{
+		task = null;
+	}
+
+	boolean pending()
+	{
+		return task != null;
+	}
+
+	// jump to the pending deadline (unless it has passed) and run its task; false if none
+	boolean runNext()
+	{
+		if (task == null)
+			return false;
+		Task t = task;
+		task = null;
+		if (deadline > now)
+			now = deadline;
+		t.onsetDue(deadline);
+		return true;
+	}
+
+	// move time forward, running each task whose deadline is reached on the way
+	void advance(long nanos)
+	{
+		long until = now + nanos;
+		while (task != null && deadline <= until)
+			runNext();
+		if (until > now)
+			now = until;
+	}
+}
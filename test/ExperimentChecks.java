@@ -0,0 +1,345 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+
+// -----------------------------------------------------------------
+// ExperimentChecks - regression checks of the trial logic and its files
+// -----------------------------------------------------------------
+
+/**
+ * Checks of the behaviour whose failures would not show in the lab until the data is analysed:
+ * whether a session can be reproduced from its seed, whether an interrupted block is recovered
+ * with every intact trial and nothing more, whether the randomization depends on the seed alone.
+ * <p>
+ * Every check runs on a virtual clock, needs no display or audio device, and writes any files to a
+ * temporary directory. Run with
+ *
+ * <pre>
+ *     java -cp bin ExperimentChecks [name-filter]
+ * </pre>
+ *
+ * Each check prints "ok" or the reason it failed; the exit status is the number of failures.
+ */
+public class ExperimentChecks
+{
+	static final int SESSION_TRIALS = 10000;
+	static final long SESSION_MILLIS = 2000; // far more than a simulated session should ever take
+
+	// one check: run() throws Failure (or anything else) if it doesn't hold
+	static abstract class Check
+	{
+		final String name;
+
+		Check(String nameArg)
+		{
+			name = nameArg;
+		}
+
+		abstract void run() throws Exception;
+	}
+
+	static class Failure extends RuntimeException
+	{
+		private static final long serialVersionUID = 1L;
+
+		Failure(String message)
+		{
+			super(message);
+		}
+	}
+
+	public static void main(String[] args)
+	{
+		String filter = args.length > 0 ? args[0] : "";
+		int failed = 0;
+		for (Check c : checks())
+		{
+			if (!c.name.contains(filter))
+				continue;
+			String result = "ok";
+			try
+			{
+				c.run();
+			} catch (Failure e)
+			{
+				result = "FAILED: " + e.getMessage();
+			} catch (Exception e)
+			{
+				result = "FAILED: " + e;
+			}
+			if (!result.equals("ok"))
+				++failed;
+			System.out.println(String.format("%-40s %s", c.name, result));
+		}
+		System.exit(failed);
+	}
+
+	static void expect(boolean ok, String what)
+	{
+		if (!ok)
+			throw new Failure(what);
+	}
+
+	// ------
+	// Checks
+	// ------
+
+	static List<Check> checks()
+	{
+		List<Check> checks = new ArrayList<Check>();
+
+		checks.add(new Check("simulated VS session is reproducible")
+		{
+			void run() throws IOException
+			{
+				long start = System.nanoTime();
+				ExperimentBlock a = simulate(config("VS", SESSION_TRIALS), 7, 11);
+				long millis = (System.nanoTime() - start) / 1000000;
+				ExperimentBlock b = simulate(config("VS", SESSION_TRIALS), 7, 11);
+				ExperimentBlock other = simulate(config("VS", SESSION_TRIALS), 8, 11);
+
+				expect(a.count == SESSION_TRIALS, "ran " + a.count + " trials, not " + SESSION_TRIALS);
+				expect(millis < SESSION_MILLIS, "took " + millis + " ms");
+				expect(Arrays.equals(a.time, b.time), "times differ");
+				expect(Arrays.equals(a.key, b.key), "keys differ");
+				expect(Arrays.equals(a.match, b.match), "match sequences differ");
+				expect(Arrays.equals(a.error, b.error), "errors differ");
+				expect(a.numberOfErrors == b.numberOfErrors, "error counts differ");
+				expect(!Arrays.equals(a.match, other.match), "another seed gives the same match sequence");
+			}
+		});
+
+		checks.add(new Check("virtual clock")
+		{
+			void run()
+			{
+				final long[] due = { -1 };
+				Scheduler.Task task = new Scheduler.Task()
+				{
+					public void onsetDue(long deadline)
+					{
+						due[0] = deadline;
+					}
+				};
+				VirtualClock clock = new VirtualClock(100);
+				clock.schedule(150, task);
+				clock.advance(30);
+				expect(due[0] == -1 && clock.now() == 130, "ran before its deadline");
+				clock.advance(30);
+				expect(due[0] == 150 && clock.now() == 160, "due " + due[0] + ", now " + clock.now());
+				expect(!clock.runNext(), "ran a task twice");
+
+				clock.schedule(140, task); // already passed: runs at once, time doesn't go back
+				expect(clock.runNext() && due[0] == 140 && clock.now() == 160, "now " + clock.now());
+				clock.schedule(500, task);
+				clock.cancel();
+				clock.advance(1000);
+				expect(due[0] == 140 && !clock.pending(), "ran a cancelled task");
+			}
+		});
+
+		checks.add(new Check("journal recovery, tails")
+		{
+			void run() throws IOException
+			{
+				File dir = Files.createTempDirectory("rtj").toFile();
+				try
+				{
+					checkRecovery(dir);
+				} finally
+				{
+					File[] files = dir.listFiles();
+					for (int i = 0; i < files.length; ++i)
+						files[i].delete();
+					dir.delete();
+				}
+			}
+		});
+
+		checks.add(new Check("journal header too long")
+		{
+			void run() throws IOException
+			{
+				ExperimentBlock block = new ExperimentBlock(config("SR", 10), null, 3);
+				ReactionTimeExperimentConfiguration c = config("SR", 10);
+				char[] keys = new char[3000];
+				Arrays.fill(keys, 'A');
+				c.setResponseKeys(new String(keys));
+				File journal = File.createTempFile("rtj", SessionJournal.SUFFIX);
+				try
+				{
+					new SessionJournal(journal.getPath(), block, c, null);
+					expect(false, "no IOException");
+				} catch (IOException e)
+				{
+					expect(e.getMessage().contains("response keys"), e.getMessage());
+				} finally
+				{
+					journal.delete();
+				}
+			}
+		});
+
+		checks.add(new Check("histogram buckets")
+		{
+			void run()
+			{
+				expect(RTHistogram.index(0) == 0, "0 us not in the first bucket");
+				expect(RTHistogram.index(Long.MAX_VALUE) == RTHistogram.BUCKETS - 1, "overflow not in the last bucket");
+				long top = 1L << (RTHistogram.MAX_EXPONENT + 1);
+				for (long us = 0; us < top; us = us < 4096 ? us + 1 : us + us / 97)
+				{
+					int i = RTHistogram.index(us);
+					expect(i >= 0 && i < RTHistogram.BUCKETS, us + " us in bucket " + i);
+					expect(RTHistogram.lowerBound(i) <= us && us < RTHistogram.lowerBound(i) + RTHistogram.width(i),
+							us + " us outside its bucket");
+					expect(RTHistogram.width(i) <= Math.max(1, RTHistogram.lowerBound(i) / RTHistogram.SUB), us
+							+ " us in a bucket too wide");
+				}
+
+				RTHistogram h = new RTHistogram();
+				expect(Double.isNaN(h.percentile(0.5)), "percentile of nothing");
+				h.add(-5.0);
+				h.add(1e12);
+				expect(h.count() == 2, "count " + h.count());
+			}
+		});
+
+		checks.add(new Check("schedule depends on the seed alone")
+		{
+			void run()
+			{
+				TrialSchedule a = TrialSchedule.generate("VS", 200, 2, 16, 1000, 1000, new Randomizer(5));
+				TrialSchedule b = TrialSchedule.generate("VS", 200, 2, 16, 1000, 1000, new Randomizer(5));
+				TrialSchedule other = TrialSchedule.generate("VS", 200, 2, 16, 1000, 1000, new Randomizer(6));
+
+				expect(Arrays.equals(a.stimulus, b.stimulus), "stimuli differ");
+				expect(Arrays.equals(a.foreperiod, b.foreperiod), "foreperiods differ");
+				expect(Arrays.equals(a.target, b.target), "targets differ");
+				expect(Arrays.equals(a.location, b.location), "locations differ");
+				expect(Arrays.equals(a.letter, b.letter), "search grids differ");
+				expect(!Arrays.equals(a.foreperiod, other.foreperiod), "another seed gives the same foreperiods");
+				for (int i = 0; i < a.trials; ++i)
+					expect(a.foreperiod[i] >= 1000 && a.foreperiod[i] < 2000, "foreperiod " + a.foreperiod[i]);
+			}
+		});
+
+		checks.add(new Check("condition sequence, seed, balance, runs")
+		{
+			void run()
+			{
+				ConditionShuffler shuffler = new ConditionShuffler(3, 2);
+				int[] a = shuffler.sequence(600, 3, new SplitMix(9));
+				int[] b = shuffler.sequence(600, 3, new SplitMix(9));
+				int[] other = shuffler.sequence(600, 3, new SplitMix(10));
+
+				expect(Arrays.equals(a, b), "sequences differ");
+				expect(!Arrays.equals(a, other), "another seed gives the same sequence");
+				int[] n = new int[shuffler.conditions];
+				int run = 0;
+				for (int i = 0; i < a.length; ++i)
+				{
+					++n[a[i]];
+					run = i > 0 && a[i] == a[i - 1] ? run + 1 : 1;
+					expect(run <= 3, "run of " + run + " at trial " + i);
+				}
+				for (int k = 0; k < n.length; ++k)
+					expect(n[k] == 100, "condition " + k + " on " + n[k] + " trials");
+			}
+		});
+
+		return checks;
+	}
+
+	// --------------------
+	// Journal recovery
+	// --------------------
+
+	static void checkRecovery(File dir) throws IOException
+	{
+		final int trials = 20;
+		final int record = 4 + 1 + SessionJournal.TRIAL_PAYLOAD + 4;
+		final int end = 4 + 1 + 4;
+
+		ExperimentBlock block = new ExperimentBlock(config("SR", trials), null, 3);
+		block.base = new File(dir, block.base).getPath();
+		block.open(null);
+		new SimulatedParticipant(300, 40, 80, 0.1, 4).run(block); // completes the files
+		File journal = new File(block.base + SessionJournal.SUFFIX);
+		byte[] data = Files.readAllBytes(journal.toPath());
+
+		SessionJournal.Recovered rec = SessionJournal.recover(journal);
+		expect(rec != null && rec.finished && rec.trials == trials, "finished journal: " + describe(rec));
+		expect(rec.seed == 3 && Arrays.equals(rec.time, block.time) && Arrays.equals(rec.key, block.key),
+				"finished journal doesn't match the block");
+
+		// interrupted after the last trial
+		int ended = data.length - end;
+		rec = recoverFrom(journal, Arrays.copyOf(data, ended));
+		expect(rec != null && !rec.finished && rec.trials == trials && rec.validLength == ended, "no end record: "
+				+ describe(rec));
+
+		// torn in the middle of the last trial's record
+		rec = recoverFrom(journal, Arrays.copyOf(data, ended - record / 2));
+		expect(rec != null && rec.trials == trials - 1 && rec.validLength == ended - record, "torn record: "
+				+ describe(rec));
+
+		// last trial's record corrupt
+		byte[] corrupt = Arrays.copyOf(data, ended);
+		corrupt[ended - record + 20] ^= 0x10;
+		rec = recoverFrom(journal, corrupt);
+		expect(rec != null && rec.trials == trials - 1 && rec.validLength == ended - record, "corrupt record: "
+				+ describe(rec));
+
+		// last trial's length field garbage (too large to be a record)
+		byte[] huge = Arrays.copyOf(data, ended);
+		huge[ended - record] = 0x7F;
+		rec = recoverFrom(journal, huge);
+		expect(rec != null && rec.trials == trials - 1, "huge length: " + describe(rec));
+
+		// a resumed block gets the recovered trials back
+		rec = recoverFrom(journal, Arrays.copyOf(data, ended - record / 2));
+		ExperimentBlock resumed = new ExperimentBlock(rec.config, rec);
+		expect(resumed.count == trials - 1 && resumed.seed == 3, "resumed at " + resumed.count);
+		expect(Arrays.equals(resumed.schedule.stimulus, block.schedule.stimulus), "resumed with another schedule");
+		for (int i = 0; i < resumed.count; ++i)
+			expect(resumed.time[i] == block.time[i] && resumed.key[i] == block.key[i], "trial " + i + " differs");
+	}
+
+	static SessionJournal.Recovered recoverFrom(File journal, byte[] data) throws IOException
+	{
+		Files.write(journal.toPath(), data);
+		return SessionJournal.recover(journal);
+	}
+
+	static String describe(SessionJournal.Recovered rec)
+	{
+		return rec == null ? "nothing recovered" : rec.trials + " trials, finished " + rec.finished + ", "
+				+ rec.validLength + " bytes";
+	}
+
+	// --------
+	// Fixtures
+	// --------
+
+	static ReactionTimeExperimentConfiguration config(String mode, int trials)
+	{
+		ReactionTimeExperimentConfiguration c = new ReactionTimeExperimentConfiguration();
+		c.setMode(mode);
+		c.setNumberOfTrials(trials);
+		c.setNumberOfItems(16);
+		return c;
+	}
+
+	// a block run in memory by a simulated participant
+	static ExperimentBlock simulate(ReactionTimeExperimentConfiguration c, long seed, long participantSeed)
+			throws IOException
+	{
+		ExperimentBlock block = new ExperimentBlock(c, null, seed);
+		String mode = c.getMode();
+		new SimulatedParticipant(SimulatedParticipant.defaultMu(mode, block.choices, c.getNumberOfItems()),
+				SimulatedParticipant.defaultSigma(mode), SimulatedParticipant.defaultTau(mode), 0.05, participantSeed)
+				.run(block);
+		return block;
+	}
+}